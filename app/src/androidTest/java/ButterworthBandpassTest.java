@@ -0,0 +1,157 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.ButterworthBandpass;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the second-order sections against the (b, a) design and the
+ * <code>lfilter</code> output of scipy for order 4, fs = 30 Hz and a
+ * 0.75 - 4 Hz band. The fixtures can be regenerated with
+ * <pre>
+ * import numpy as np
+ * from scipy.signal import butter, lfilter
+ * t = np.arange(150)
+ * x = (20.0 + 0.5 * np.sin(2 * np.pi * 1.2 * t / 30.0)
+ *      + 0.3 * np.sin(2 * np.pi * 0.2 * t / 30.0)
+ *      + 0.1 * ((t * 7919) % 101 / 101.0 - 0.5))
+ * b, a = butter(4, [0.75 / 15.0, 4.0 / 15.0], btype='band')
+ * y = lfilter(b, a, x)
+ * </pre>
+ * The sections may pair the poles differently from <code>zpk2sos</code>, so
+ * they are compared through their product rather than one by one.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ButterworthBandpassTest {
+
+    private static final double FS = 30.0;
+
+    private static final double[] B = {
+            0.006327357590615654, 0.0, -0.025309430362462616,
+            0.0, 0.03796414554369393, 0.0,
+            -0.025309430362462616, 0.0, 0.006327357590615654
+    };
+
+    private static final double[] A = {
+            1.0, -5.813279095369394, 15.111383831808537,
+            -23.02950090724998, 22.560337846773518, -14.558941428344015,
+            6.041826555997934, -1.4736346192506764, 0.16194311872310535
+    };
+
+    private static final double[] EXPECTED = {
+            0.12623078393278228, 0.8611686780845089, 2.722196352733163,
+            5.337825266030222, 7.251877943528363, 6.974305339328743,
+            4.12381920266899, -0.34419626226115174, -4.7933853356050315,
+            -7.83739138813719, -8.938409830251217, -8.426547710985274,
+            -7.0874909195463855, -5.657649465036339, -4.513489637467049,
+            -3.648390428133091, -2.849257003279489, -1.9129838791824183,
+            -0.7780913214005722, 0.4656685518246813, 1.6535666388543115,
+            2.641738210848387, 3.3662719057711765, 3.8449054565292697,
+            4.136402157735873, 4.292973494258485, 4.335861229621548,
+            4.2600245460215, 4.054069869534741, 3.716691512476424,
+            3.2619188489779813, 2.7167347982280656, 2.115498688265515,
+            1.4933337638619704, 0.8790583392292195, 0.29130520396389215,
+            -0.25854344559458725, -0.7603091137058139, -1.201551166980233,
+            -1.5677422521015973, -1.8452476965174043, -2.026910727458593,
+            -2.1159982905508015, -2.123804959254619, -2.0630729591809605,
+            -1.9433094962751292, -1.7724226750828918, -1.5612531957704558,
+            -1.3243189884108268, -1.0762429979450625, -0.8282733199207591,
+            -0.5892385111337634, -0.36855148337203364, -0.17580809738128692,
+            -0.017146933467013015, 0.10726506474669947, 0.20081421345186082,
+            0.2660782058308446, 0.3043247299525651, 0.31872037953026155,
+            0.3166871358733473, 0.3073772404697479, 0.2971453269347387,
+            0.28885143421538517, 0.2849548505779956, 0.2899400917178697,
+            0.3080846433894783, 0.3394118186011658, 0.3795822346571468,
+            0.4229673092270648, 0.46513729282492633, 0.5039136023380658,
+            0.5387567465823183, 0.5673129386253766, 0.5824916998369719,
+            0.5746874641116917, 0.5374611003473168, 0.47119919670731464,
+            0.3807008106783113, 0.27014710808107006, 0.14194048709811385,
+            -0.00028417119479320907, -0.1489916152520553, -0.2947102303597348,
+            -0.43008389973541655, -0.5503907612326439, -0.6505884438408801,
+            -0.7232222573853113, -0.7610291842803593, -0.7612891818760879,
+            -0.7261470348811524, -0.6590629715804474, -0.5619555794946927,
+            -0.4370768166267276, -0.2907710998509056, -0.13333531626530815,
+            0.02491914178147546, 0.17688335255195173, 0.31710540656491415,
+            0.43828738911019754, 0.5315519361565088, 0.5897056375403749,
+            0.6097248305060704, 0.5936160552682411, 0.547435539030485,
+            0.4773150814253274, 0.385901400782948, 0.27386491011219866,
+            0.14484165541550642, 0.008375222766571572, -0.1231450204810258,
+            -0.24005246029124555, -0.3369579877578893, -0.40996368494255486,
+            -0.4540369864787494, -0.4648314701159284, -0.44241967387881104,
+            -0.3913377403790729, -0.3170322697419825, -0.2230846967574714,
+            -0.11309038446337971, 0.0057090985853596316, 0.1227707191322361,
+            0.22837031734651458, 0.3168978701242482, 0.3852591533614096,
+            0.4292133166610789, 0.44342243223446576, 0.42511671107179994,
+            0.3768728215261544, 0.3044908522848371, 0.21281067161736222,
+            0.10523731936199682, -0.013118109241635395, -0.13315995993887372,
+            -0.2443642197451045, -0.33928371117486356, -0.41419938877182716,
+            -0.4666299102304165, -0.4934307034438299, -0.49030154238435353,
+            -0.45290071440690854, -0.3807109217618324, -0.28025385206351394,
+            -0.16301522170288213, -0.03974928477589565, 0.083357460428857,
+            0.20260278109985333, 0.31219968849349067, 0.4036790440026096
+    };
+
+    private static double[] trace() {
+        double[] x = new double[EXPECTED.length];
+        for (int t = 0; t < x.length; t++) {
+            x[t] = 20.0 + 0.5 * Math.sin(2.0 * Math.PI * 1.2 * t / FS)
+                    + 0.3 * Math.sin(2.0 * Math.PI * 0.2 * t / FS)
+                    + 0.1 * ((t * 7919) % 101 / 101.0 - 0.5);
+        }
+        return x;
+    }
+
+    @Test
+    public void testSectionsMultiplyToScipyDesign() {
+        double[] sos = ButterworthBandpass.designSos(4, 0.75, 4.0, FS);
+        double[] b = {1.0};
+        double[] a = {1.0};
+        for (int s = 0; s < sos.length; s += ButterworthBandpass.SOS_STRIDE) {
+            double a0 = sos[s + 3];
+            b = multiply(b, new double[]{sos[s] / a0, sos[s + 1] / a0, sos[s + 2] / a0});
+            a = multiply(a, new double[]{1.0, sos[s + 4] / a0, sos[s + 5] / a0});
+        }
+        assertEquals(B.length, b.length);
+        assertEquals(A.length, a.length);
+        for (int i = 0; i < B.length; i++) {
+            assertEquals(B[i], b[i], 1e-12);
+            assertEquals(A[i], a[i], 1e-10 * Math.abs(A[i]) + 1e-12);
+        }
+    }
+
+    @Test
+    public void testStreamingOutputMatchesLfilter() {
+        double[] x = trace();
+        double peak = 0.0;
+        for (double v : EXPECTED) {
+            peak = Math.max(peak, Math.abs(v));
+        }
+        ButterworthBandpass bandpass = new ButterworthBandpass(4, 0.75, 4.0, FS);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals("sample " + i, EXPECTED[i], bandpass.filter(x[i]), 1e-9 * peak);
+        }
+
+        // the batch path starts from zero state too
+        double[] y = new double[x.length];
+        bandpass.reset();
+        bandpass.filter(x, y);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals("sample " + i, EXPECTED[i], y[i], 1e-9 * peak);
+        }
+    }
+
+    private static double[] multiply(double[] p, double[] q) {
+        double[] res = new double[p.length + q.length - 1];
+        for (int i = 0; i < p.length; i++) {
+            for (int j = 0; j < q.length; j++) {
+                res[i + j] += p[i] * q[j];
+            }
+        }
+        return res;
+    }
+}
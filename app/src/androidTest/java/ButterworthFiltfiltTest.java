@@ -0,0 +1,66 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.ButterworthBandpass;
+import com.tzutalin.dlibtest.ButterworthDesigner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the design cache and the zero-phase batch filter.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ButterworthFiltfiltTest {
+
+    private static final double FS = 30.0;
+
+    @Test
+    public void testDesignsAreShared() {
+        ButterworthDesigner.clear();
+        double[] sos = ButterworthDesigner.getSos(4, 0.75, 4.0, FS);
+        assertSame(sos, ButterworthDesigner.getSos(4, 0.75, 4.0, FS));
+        assertNotSame(sos, ButterworthDesigner.getSos(4, 0.75, 4.0, 25.0));
+        assertEquals(2, ButterworthDesigner.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        ButterworthDesigner.clear();
+        ButterworthDesigner.setCapacity(2);
+        try {
+            double[] kept = ButterworthDesigner.getSos(4, 0.75, 4.0, FS);
+            double[] dropped = ButterworthDesigner.getSos(4, 0.75, 4.0, 25.0);
+            ButterworthDesigner.getSos(4, 0.75, 4.0, FS);
+            ButterworthDesigner.getSos(4, 0.75, 4.0, 20.0);
+            assertEquals(2, ButterworthDesigner.size());
+            assertSame(kept, ButterworthDesigner.getSos(4, 0.75, 4.0, FS));
+            assertNotSame(dropped, ButterworthDesigner.getSos(4, 0.75, 4.0, 25.0));
+        } finally {
+            ButterworthDesigner.setCapacity(ButterworthDesigner.DEFAULT_CAPACITY);
+        }
+    }
+
+    @Test
+    public void testFiltfiltHasNoPhaseShift() {
+        ButterworthBandpass bandpass = new ButterworthBandpass(4, 0.75, 4.0, FS);
+        int n = 300;
+        double f = 1.7;
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = Math.sin(2.0 * Math.PI * f * i / FS) + 3.0;
+        }
+        double[] y = new double[n];
+        bandpass.filtfilt(x, y);
+        // away from the ends the offset is gone and the in-band sine is neither
+        // delayed nor noticeably attenuated
+        for (int i = 60; i < n - 60; i++) {
+            assertEquals(Math.sin(2.0 * Math.PI * f * i / FS), y[i], 0.05);
+        }
+    }
+}
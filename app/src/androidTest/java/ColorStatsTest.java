@@ -0,0 +1,85 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.ColorStats;
+import com.tzutalin.dlibtest.Hue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the fixed-point hue against the floating-point HSV definition and
+ * the moments kept by ColorStats.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ColorStatsTest {
+
+    @Test
+    public void testHueWithinOneUnitForAllColours() {
+        for (int r = 0; r < 256; r++) {
+            for (int g = 0; g < 256; g++) {
+                for (int b = 0; b < 256; b++) {
+                    int h = Hue.fromRgb(r, g, b);
+                    assertTrue(h >= 0 && h < Hue.FULL_TURN);
+                    double error = Math.abs(h - hue(r, g, b) * Hue.SCALE);
+                    // hues just below 360 degrees may round up to a full turn and wrap to 0
+                    error = Math.min(error, Hue.FULL_TURN - error);
+                    assertTrue(r + ", " + g + ", " + b + ": " + h, error <= 1.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMeansAndVariances() {
+        int[] pixels = {0xff102030, 0xff405060, 0xff708090, 0xffa0b0c0, 0x00d0e0f0, 0xff000000};
+        ColorStats stats = new ColorStats();
+        // the last column of the 3x2 block is skipped by the stride
+        stats.add(pixels, 0, 3, 2, 2);
+        assertEquals(4, stats.getCount());
+        int[] reds = {0x10, 0x40, 0xa0, 0xd0};
+        double mean = 0.0;
+        for (int r : reds) {
+            mean += r / 4.0;
+        }
+        double variance = 0.0;
+        for (int r : reds) {
+            variance += (r - mean) * (r - mean) / 4.0;
+        }
+        assertEquals(mean, stats.getMean(ColorStats.RED), 1e-12);
+        assertEquals(variance, stats.getVariance(ColorStats.RED), 1e-9);
+        // every colour rises in equal steps from red to blue, which is a hue of 210 degrees
+        assertEquals(210.0, stats.getMean(ColorStats.HUE), 1.0 / Hue.SCALE);
+        assertEquals(0.0, stats.getVariance(ColorStats.HUE), 1e-9);
+
+        stats.clear();
+        assertEquals(0, stats.getCount());
+        assertTrue(Double.isNaN(stats.getMean(ColorStats.GREEN)));
+    }
+
+    /**
+     * The hue of Color.RGBToHSV in degrees.
+     */
+    private static double hue(int r, int g, int b) {
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        double delta = max - min;
+        if (delta == 0) {
+            return 0.0;
+        }
+        double h;
+        if (r == max) {
+            h = (g - b) / delta;
+        } else if (g == max) {
+            h = 2.0 + (b - r) / delta;
+        } else {
+            h = 4.0 + (r - g) / delta;
+        }
+        h *= 60.0;
+        return h < 0.0 ? h + 360.0 : h;
+    }
+}
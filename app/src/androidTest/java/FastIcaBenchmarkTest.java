@@ -0,0 +1,90 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.tzutalin.dlibtest.FastIca;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures FastICA fixed-point iterations per second on RGB-sized windows.
+ * The accuracy is set to zero so every fit runs the full iteration budget.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class FastIcaBenchmarkTest {
+
+    private static final String TAG = "FastIcaBenchmark";
+    private static final int CHANNELS = 3;
+    private static final int ITERATIONS = 200;
+    private static final int WARMUP_FITS = 20;
+    private static final int MEASURED_FITS = 10;
+
+    @Test
+    public void benchmarkWindow() {
+        benchmark(150, FastIca.Decorrelation.EIGEN);
+    }
+
+    @Test
+    public void benchmarkLongWindow() {
+        benchmark(1500, FastIca.Decorrelation.EIGEN);
+    }
+
+    @Test
+    public void benchmarkWindowNewtonSchulz() {
+        benchmark(150, FastIca.Decorrelation.NEWTON_SCHULZ);
+    }
+
+    @Test
+    public void benchmarkLongWindowFloat() {
+        benchmark(1500, FastIca.Decorrelation.EIGEN, FastIca.Precision.FLOAT);
+    }
+
+    private void benchmark(int samples, FastIca.Decorrelation decorrelation) {
+        benchmark(samples, decorrelation, FastIca.Precision.DOUBLE);
+    }
+
+    private void benchmark(int samples, FastIca.Decorrelation decorrelation,
+                           FastIca.Precision precision) {
+        double[][] input = mixture(samples, 1);
+        FastIca ica = new FastIca(CHANNELS, samples, 7);
+        ica.setDecorrelation(decorrelation);
+        ica.setPrecision(precision);
+        ica.setMaxIterations(ITERATIONS + 1);
+        ica.setEpsilon(0.0);
+        for (int i = 0; i < WARMUP_FITS; i++) {
+            ica.fit(input);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_FITS; i++) {
+            long start = System.nanoTime();
+            ica.fit(input);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        assertEquals(ITERATIONS, ica.getIterations());
+        Log.i(TAG, samples + " samples, " + decorrelation + ", " + precision + ": "
+                + Math.round(ITERATIONS / (best / 1e9)) + " iterations/s");
+    }
+
+    /**
+     * A sine, a square wave and uniform noise, mixed into three channels.
+     */
+    private static double[][] mixture(int samples, long seed) {
+        Random random = new Random(seed);
+        double[][] x = new double[CHANNELS][samples];
+        for (int i = 0; i < samples; i++) {
+            double sine = Math.sin(i * 0.3);
+            double noise = random.nextDouble() - 0.5;
+            double square = Math.signum(Math.sin(i * 0.07));
+            x[0][i] = sine + 0.5 * noise + 0.2 * square;
+            x[1][i] = 0.3 * sine + noise + 0.6 * square;
+            x[2][i] = 0.7 * sine - 0.2 * noise + square;
+        }
+        return x;
+    }
+}
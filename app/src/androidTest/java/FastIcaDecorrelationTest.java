@@ -0,0 +1,105 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.FastIca;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the iterative symmetric decorrelation reaches the same unmixing
+ * matrix as the eigendecomposition.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FastIcaDecorrelationTest {
+
+    private static final int CHANNELS = 3;
+    private static final int SAMPLES = 150;
+
+    @Test
+    public void testInitialDecorrelationMatchesEigen() {
+        // a single iteration limit leaves B as the decorrelated random start
+        for (long seed = 1; seed <= 20; seed++) {
+            double[][] input = mixture(seed);
+            FastIca eigen = fit(FastIca.Decorrelation.EIGEN, input, seed, 1);
+            FastIca iterative = fit(FastIca.Decorrelation.NEWTON_SCHULZ, input, seed, 1);
+            assertOrthonormal(iterative.getUnmixingMatrix(), 1e-10);
+            assertMatrixEquals(eigen.getUnmixingMatrix(), iterative.getUnmixingMatrix(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testConvergedSeparationMatchesEigen() {
+        for (long seed = 1; seed <= 5; seed++) {
+            double[][] input = mixture(seed);
+            FastIca eigen = fit(FastIca.Decorrelation.EIGEN, input, seed,
+                    FastIca.DEFAULT_MAX_ITERATIONS);
+            FastIca iterative = fit(FastIca.Decorrelation.NEWTON_SCHULZ, input, seed,
+                    FastIca.DEFAULT_MAX_ITERATIONS);
+            assertEquals(eigen.isConverged(), iterative.isConverged());
+            assertOrthonormal(iterative.getUnmixingMatrix(), 1e-10);
+            assertMatrixEquals(eigen.getSeparatingMatrix(), iterative.getSeparatingMatrix(), 1e-6);
+        }
+    }
+
+    private static FastIca fit(FastIca.Decorrelation mode, double[][] input, long seed,
+                               int maxIterations) {
+        FastIca ica = new FastIca(CHANNELS, SAMPLES, seed);
+        ica.setDecorrelation(mode);
+        ica.setMaxIterations(maxIterations);
+        ica.fit(input);
+        return ica;
+    }
+
+    private static void assertOrthonormal(double[][] b, double delta) {
+        for (int i = 0; i < b.length; i++) {
+            for (int j = 0; j < b.length; j++) {
+                double dot = 0.0;
+                for (int k = 0; k < b[i].length; k++) {
+                    dot += b[i][k] * b[j][k];
+                }
+                assertEquals(i == j ? 1.0 : 0.0, dot, delta);
+            }
+        }
+    }
+
+    private static void assertMatrixEquals(double[][] expected, double[][] actual, double delta) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[i].length; j++) {
+                assertEquals(expected[i][j], actual[i][j], delta);
+            }
+        }
+    }
+
+    /**
+     * A sine, a square wave and uniform noise, mixed into three channels.
+     */
+    private static double[][] mixture(long seed) {
+        Random random = new Random(seed);
+        double[][] mixing = new double[CHANNELS][CHANNELS];
+        for (int i = 0; i < CHANNELS; i++) {
+            for (int j = 0; j < CHANNELS; j++) {
+                mixing[i][j] = random.nextDouble() + (i == j ? 1.0 : 0.0);
+            }
+        }
+        double[][] x = new double[CHANNELS][SAMPLES];
+        for (int t = 0; t < SAMPLES; t++) {
+            double[] sources = {
+                    Math.sin(t * 0.3),
+                    Math.signum(Math.sin(t * 0.07)),
+                    random.nextDouble() - 0.5
+            };
+            for (int i = 0; i < CHANNELS; i++) {
+                for (int j = 0; j < CHANNELS; j++) {
+                    x[i][t] += mixing[i][j] * sources[j];
+                }
+            }
+        }
+        return x;
+    }
+}
@@ -0,0 +1,93 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.tzutalin.dlibtest.FastIca;
+import com.tzutalin.dlibtest.ParallelLoop;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that parallel fits give the same result for any thread count and
+ * agree with the serial fit.
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class FastIcaParallelTest {
+
+    private static final int CHANNELS = 24;
+    private static final int SAMPLES = 1200;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testDeterministicAcrossThreadCounts() {
+        double[][] input = mixture(1);
+        double[][] reference = fit(input, new ParallelLoop(1));
+        for (int threads = 2; threads <= 8; threads *= 2) {
+            double[][] separating = fit(input, new ParallelLoop(threads));
+            for (int i = 0; i < CHANNELS; i++) {
+                for (int j = 0; j < CHANNELS; j++) {
+                    assertEquals(threads + " threads", reference[i][j], separating[i][j], 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesSerial() {
+        // chunked sums round differently; the iterations amplify that a little
+        double[][] input = mixture(2);
+        double[][] serial = fit(input, null);
+        double[][] parallel = fit(input, ParallelLoop.getDefault());
+        for (int i = 0; i < CHANNELS; i++) {
+            for (int j = 0; j < CHANNELS; j++) {
+                assertEquals(serial[i][j], parallel[i][j], 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testSmallProblemsStaySerial() {
+        FastIca ica = new FastIca(3, 150);
+        ica.setParallel(ParallelLoop.getDefault());
+        assertFalse(ica.isParallel());
+        FastIca large = new FastIca(CHANNELS, SAMPLES);
+        large.setParallel(ParallelLoop.getDefault());
+        assertTrue(large.isParallel());
+    }
+
+    private static double[][] fit(double[][] input, ParallelLoop loop) {
+        FastIca ica = new FastIca(CHANNELS, SAMPLES, 3);
+        ica.setParallel(loop);
+        // a fixed number of iterations keeps the comparison independent of convergence
+        ica.setMaxIterations(ITERATIONS + 1);
+        ica.setEpsilon(0.0);
+        ica.fit(input);
+        return ica.getSeparatingMatrix();
+    }
+
+    /**
+     * Sines and square waves of distinct frequencies, mixed into every channel.
+     */
+    private static double[][] mixture(long seed) {
+        Random random = new Random(seed);
+        double[][] x = new double[CHANNELS][SAMPLES];
+        for (int c = 0; c < CHANNELS; c++) {
+            double f = 0.003 * (c + 1) + 0.001 * random.nextDouble();
+            for (int t = 0; t < SAMPLES; t++) {
+                double s = Math.sin(2.0 * Math.PI * f * t);
+                double v = c % 2 == 0 ? s : Math.signum(s);
+                for (int i = 0; i < CHANNELS; i++) {
+                    x[i][t] += v * (random.nextDouble() + (i == c ? 2.0 : 0.0));
+                }
+            }
+        }
+        return x;
+    }
+}
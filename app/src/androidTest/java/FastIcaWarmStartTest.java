@@ -0,0 +1,123 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.FastIca;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Slides a 150 sample window over a mixture in hops of 5 samples and checks
+ * that warm-started fits need fewer iterations and keep their components.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FastIcaWarmStartTest {
+
+    private static final int CHANNELS = 3;
+    private static final int WINDOW = 150;
+    private static final int HOP = 5;
+    private static final int LENGTH = 1500;
+    private static final double FS = 30.0;
+
+    @Test
+    public void testWarmStartReducesIterations() {
+        double[][] signal = mixture(4);
+        double cold = meanIterations(signal, false);
+        double warm = meanIterations(signal, true);
+        assertTrue("warm " + warm + ", cold " + cold, warm < cold);
+    }
+
+    @Test
+    public void testWarmStartKeepsComponents() {
+        double[][] signal = mixture(5);
+        FastIca ica = new FastIca(CHANNELS, WINDOW, 1);
+        ica.setWarmStart(true);
+        double[][] window = new double[CHANNELS][WINDOW];
+        double[][] previous = new double[CHANNELS][CHANNELS];
+        for (int start = 0; start + WINDOW <= LENGTH; start += HOP) {
+            slice(signal, start, window);
+            assertTrue(ica.fit(window));
+            assertTrue(start == 0 || ica.wasWarmStarted());
+            double[][] separating = ica.getSeparatingMatrix();
+            if (start > 0) {
+                for (int c = 0; c < CHANNELS; c++) {
+                    assertTrue("component " + c + " at " + start,
+                            cosine(separating[c], previous[c]) > 0.9);
+                }
+            }
+            for (int c = 0; c < CHANNELS; c++) {
+                System.arraycopy(separating[c], 0, previous[c], 0, CHANNELS);
+            }
+        }
+    }
+
+    @Test
+    public void testResetStartsCold() {
+        double[][] window = new double[CHANNELS][WINDOW];
+        slice(mixture(6), 0, window);
+        FastIca ica = new FastIca(CHANNELS, WINDOW, 1);
+        ica.setWarmStart(true);
+        ica.fit(window);
+        ica.fit(window);
+        assertTrue(ica.wasWarmStarted());
+        ica.resetWarmStart();
+        ica.fit(window);
+        assertFalse(ica.wasWarmStarted());
+    }
+
+    private static double meanIterations(double[][] signal, boolean warmStart) {
+        FastIca ica = new FastIca(CHANNELS, WINDOW, 1);
+        ica.setWarmStart(warmStart);
+        double[][] window = new double[CHANNELS][WINDOW];
+        int fits = 0;
+        long iterations = 0;
+        for (int start = 0; start + WINDOW <= LENGTH; start += HOP) {
+            slice(signal, start, window);
+            ica.fit(window);
+            iterations += ica.getIterations();
+            fits++;
+        }
+        return (double) iterations / fits;
+    }
+
+    private static void slice(double[][] signal, int start, double[][] window) {
+        for (int c = 0; c < CHANNELS; c++) {
+            System.arraycopy(signal[c], start, window[c], 0, WINDOW);
+        }
+    }
+
+    private static double cosine(double[] a, double[] b) {
+        double dot = 0.0;
+        double na = 0.0;
+        double nb = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+
+    /**
+     * A 72 bpm sine, a slow square wave and uniform noise, mixed into three channels.
+     */
+    private static double[][] mixture(long seed) {
+        Random random = new Random(seed);
+        double[][] x = new double[CHANNELS][LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            double pulse = Math.sin(2.0 * Math.PI * 1.2 * i / FS);
+            double square = Math.signum(Math.sin(2.0 * Math.PI * 0.3 * i / FS));
+            double noise = random.nextDouble() - 0.5;
+            x[0][i] = pulse + 0.5 * noise + 0.2 * square;
+            x[1][i] = 0.3 * pulse + noise + 0.6 * square;
+            x[2][i] = 0.7 * pulse - 0.2 * noise + square;
+        }
+        return x;
+    }
+}
@@ -0,0 +1,92 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.Fft;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the radix-2 and Bluestein paths against a direct O(n^2) DFT.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FftTest {
+
+    private static void assertMatchesDirectDft(int n) {
+        Random random = new Random(n);
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = random.nextGaussian();
+            im[i] = random.nextGaussian();
+        }
+        double[] expectedRe = new double[n];
+        double[] expectedIm = new double[n];
+        for (int k = 0; k < n; k++) {
+            for (int j = 0; j < n; j++) {
+                // reduce k * j first so the angle stays exact for long inputs
+                double angle = -2.0 * Math.PI * ((long) k * j % n) / n;
+                expectedRe[k] += re[j] * Math.cos(angle) - im[j] * Math.sin(angle);
+                expectedIm[k] += re[j] * Math.sin(angle) + im[j] * Math.cos(angle);
+            }
+        }
+
+        new Fft(n).transform(re, im);
+        double tolerance = 1e-9 * n;
+        for (int k = 0; k < n; k++) {
+            assertEquals("n = " + n + ", re " + k, expectedRe[k], re[k], tolerance);
+            assertEquals("n = " + n + ", im " + k, expectedIm[k], im[k], tolerance);
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoLengths() {
+        for (int n : new int[]{1, 2, 8, 64, 256}) {
+            assertMatchesDirectDft(n);
+        }
+    }
+
+    @Test
+    public void testBluesteinLengths() {
+        // primes, the heart-rate window and lengths just off a power of two
+        for (int n : new int[]{3, 5, 7, 97, 100, 127, 129, 150, 300}) {
+            assertMatchesDirectDft(n);
+        }
+    }
+
+    @Test
+    public void testPowerSpectrumOfSine() {
+        int n = 150;
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = Math.cos(2.0 * Math.PI * 12 * i / n);
+        }
+        double[] power = new double[n];
+        new Fft(n).powerSpectrum(x, power);
+        for (int k = 0; k < n; k++) {
+            double expected = k == 12 || k == n - 12 ? n * n / 4.0 : 0.0;
+            assertEquals("bin " + k, expected, power[k], 1e-6);
+        }
+    }
+
+    @Test
+    public void testFftfreqFollowsNumpy() {
+        double[] odd = new double[5];
+        Fft.fftfreq(5, 0.1, odd);
+        double[] expectedOdd = {0.0, 2.0, 4.0, -4.0, -2.0};
+        for (int i = 0; i < odd.length; i++) {
+            assertEquals(expectedOdd[i], odd[i], 1e-12);
+        }
+        double[] even = new double[4];
+        Fft.fftfreq(4, 0.5, even);
+        double[] expectedEven = {0.0, 0.5, -1.0, -0.5};
+        for (int i = 0; i < even.length; i++) {
+            assertEquals(expectedEven[i], even[i], 1e-12);
+        }
+    }
+}
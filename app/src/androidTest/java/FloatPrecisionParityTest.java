@@ -0,0 +1,144 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.DenseMatrix;
+import com.tzutalin.dlibtest.FastIca;
+import com.tzutalin.dlibtest.FloatKernels;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the float kernels and the float FastICA update against their double
+ * counterparts on inputs scaled like 8-bit colour means.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FloatPrecisionParityTest {
+
+    // float carries 24 bits; sums over a few hundred terms keep about 5 digits
+    private static final double KERNEL_TOLERANCE = 1e-5;
+    private static final double SEPARATION_TOLERANCE = 1e-3;
+
+    @Test
+    public void testDotAndAxpy() {
+        Random random = new Random(1);
+        int n = 300;
+        double[] a = colours(random, n);
+        double[] b = colours(random, n);
+        float[] af = toFloat(a);
+        float[] bf = toFloat(b);
+
+        double dot = 0.0;
+        for (int i = 0; i < n; i++) {
+            dot += a[i] * b[i];
+        }
+        assertRelative(dot, FloatKernels.dot(af, 0, bf, 0, n), KERNEL_TOLERANCE);
+
+        FloatKernels.axpy(0.5f, af, 0, bf, 0, n);
+        for (int i = 0; i < n; i++) {
+            assertRelative(b[i] + 0.5 * a[i], bf[i], KERNEL_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testGemmAndGram() {
+        Random random = new Random(2);
+        int m = 7;
+        int n = 150;
+        int o = 5;
+        DenseMatrix a = new DenseMatrix(m, n, n, colours(random, m * n));
+        DenseMatrix b = new DenseMatrix(n, o, o, colours(random, n * o));
+        DenseMatrix product = DenseMatrix.mult(a, b, new DenseMatrix(m, o));
+        DenseMatrix gram = DenseMatrix.gram(a, new DenseMatrix(m, m));
+
+        float[] productF = new float[m * o];
+        float[] gramF = new float[m * m];
+        FloatKernels.gemm(m, n, o, toFloat(a.getData()), n, toFloat(b.getData()), o, productF, o);
+        FloatKernels.gram(m, n, toFloat(a.getData()), n, gramF, m);
+        for (int k = 0; k < m * o; k++) {
+            assertRelative(product.getData()[k], productF[k], KERNEL_TOLERANCE);
+        }
+        for (int k = 0; k < m * m; k++) {
+            assertRelative(gram.getData()[k], gramF[k], KERNEL_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testFastIcaSeparationMatchesDouble() {
+        checkSeparation(3, 150, 3);
+        checkSeparation(6, 600, 4);
+    }
+
+    private static void checkSeparation(int channels, int samples, long seed) {
+        double[][] input = mixture(channels, samples, seed);
+        FastIca reference = new FastIca(channels, samples, seed);
+        FastIca single = new FastIca(channels, samples, seed);
+        single.setPrecision(FastIca.Precision.FLOAT);
+        assertTrue(reference.fit(input));
+        assertTrue(single.fit(input));
+        double[][] expected = reference.getUnmixingMatrix();
+        double[][] actual = single.getUnmixingMatrix();
+        for (int i = 0; i < channels; i++) {
+            for (int j = 0; j < channels; j++) {
+                assertEquals(channels + "x" + samples + " (" + i + ", " + j + ")",
+                        expected[i][j], actual[i][j], SEPARATION_TOLERANCE);
+            }
+        }
+    }
+
+    private static void assertRelative(double expected, double actual, double tolerance) {
+        assertEquals(expected, actual, tolerance * Math.max(1.0, Math.abs(expected)));
+    }
+
+    private static float[] toFloat(double[] values) {
+        float[] res = new float[values.length];
+        FloatKernels.toFloat(values, 0, res, 0, values.length);
+        return res;
+    }
+
+    /**
+     * Values around a colour mean of 8-bit channels, with small variations.
+     */
+    private static double[] colours(Random random, int n) {
+        double[] res = new double[n];
+        for (int i = 0; i < n; i++) {
+            res[i] = 120.0 + 8.0 * random.nextDouble();
+        }
+        return res;
+    }
+
+    /**
+     * Sines and square waves of distinct frequencies, mixed into the channels
+     * on top of colour-like offsets.
+     */
+    private static double[][] mixture(int channels, int samples, long seed) {
+        Random random = new Random(seed);
+        double[][] sources = new double[channels][samples];
+        for (int c = 0; c < channels; c++) {
+            double f = 0.011 * (c + 1) + 0.003 * random.nextDouble();
+            for (int t = 0; t < samples; t++) {
+                double s = Math.sin(2.0 * Math.PI * f * t);
+                sources[c][t] = c % 2 == 0 ? s : Math.signum(s);
+            }
+        }
+        double[][] x = new double[channels][samples];
+        for (int i = 0; i < channels; i++) {
+            for (int j = 0; j < channels; j++) {
+                double weight = random.nextDouble() + (i == j ? 1.0 : 0.0);
+                for (int t = 0; t < samples; t++) {
+                    x[i][t] += weight * sources[j][t];
+                }
+            }
+            for (int t = 0; t < samples; t++) {
+                x[i][t] += 120.0;
+            }
+        }
+        return x;
+    }
+}
@@ -0,0 +1,102 @@
+import android.graphics.Rect;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.ColorStats;
+import com.tzutalin.dlibtest.IntegralImage;
+import com.tzutalin.dlibtest.YuvRoiSampler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares rectangle statistics from the summed-area tables with direct
+ * accumulation over the same pixels.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class IntegralImageTest {
+
+    private static final int WIDTH = 90;
+    private static final int HEIGHT = 70;
+    private static final int STRIDE = 100;
+
+    @Test
+    public void testRectanglesMatchColorStats() {
+        Random random = new Random(1);
+        int[] pixels = new int[STRIDE * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        // the region starts at frame coordinates (200, 100)
+        IntegralImage integral = new IntegralImage();
+        integral.build(pixels, 0, STRIDE, 200, 100, WIDTH, HEIGHT);
+
+        ColorStats stats = new ColorStats();
+        Rect rect = new Rect();
+        for (int k = 0; k < 50; k++) {
+            int x0 = random.nextInt(WIDTH);
+            int y0 = random.nextInt(HEIGHT);
+            int x1 = x0 + 1 + random.nextInt(WIDTH - x0);
+            int y1 = y0 + 1 + random.nextInt(HEIGHT - y0);
+            rect.set(200 + x0, 100 + y0, 200 + x1, 100 + y1);
+            stats.clear();
+            stats.add(pixels, y0 * STRIDE + x0, STRIDE, x1 - x0, y1 - y0);
+
+            assertEquals(stats.getCount(), integral.getCount(rect));
+            for (int c = 0; c < ColorStats.CHANNELS; c++) {
+                assertEquals(stats.getMean(c), integral.getMean(c, rect), 1e-9);
+                assertEquals(stats.getVariance(c), integral.getVariance(c, rect),
+                        1e-9 * Math.max(1.0, stats.getVariance(c)));
+            }
+        }
+    }
+
+    @Test
+    public void testRectanglesAreClippedToTheRegion() {
+        int[] pixels = new int[STRIDE * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                pixels[y * STRIDE + x] = 0xff000000 | (x << 16);
+            }
+        }
+        IntegralImage integral = new IntegralImage();
+        integral.build(pixels, 0, STRIDE, 0, 0, WIDTH, HEIGHT);
+        // only columns 80 to 89 lie inside
+        Rect rect = new Rect(80, -10, 120, 10);
+        assertEquals(100, integral.getCount(rect));
+        assertEquals(84.5, integral.getMean(ColorStats.RED, rect), 1e-12);
+        assertTrue(Double.isNaN(integral.getMean(ColorStats.RED, new Rect(WIDTH, 0, WIDTH + 5, 5))));
+    }
+
+    @Test
+    public void testYuvIntegralMatchesDirectSampling() {
+        int width = 320;
+        int height = 240;
+        byte[] y = new byte[width * height];
+        byte[] u = new byte[width * height / 2];
+        byte[] v = new byte[width * height / 2];
+        Random random = new Random(2);
+        random.nextBytes(y);
+        random.nextBytes(u);
+        random.nextBytes(v);
+        YuvRoiSampler sampler = new YuvRoiSampler();
+        sampler.setFrame(y, u, v, width, height, width, width, 2);
+        sampler.setViewGeometry(224, 90);
+
+        IntegralImage integral = new IntegralImage();
+        sampler.integrate(new Rect(40, 30, 180, 200), integral);
+        double[] expected = new double[YuvRoiSampler.CHANNELS];
+        double[] actual = new double[YuvRoiSampler.CHANNELS];
+        Rect roi = new Rect(60, 50, 90, 75);
+        assertEquals(sampler.sample(roi, expected), sampler.sample(integral, roi, actual));
+        for (int c = 0; c < YuvRoiSampler.CHANNELS; c++) {
+            assertEquals(expected[c], actual[c], 1e-9);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import android.graphics.Rect;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.IntegralImage;
+import com.tzutalin.dlibtest.PatchGrid;
+import com.tzutalin.dlibtest.SignalRingBuffer;
+import com.tzutalin.dlibtest.YuvRoiSampler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the patch layout, the sampling of clipped patches, and that the
+ * fusion favours patches carrying the pulse.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class PatchGridTest {
+
+    private static final double FS = 30.0;
+    private static final int WINDOW = 150;
+
+    @Test
+    public void testPatchesTileTheFace() {
+        PatchGrid grid = new PatchGrid(3, 4, WINDOW, FS, 0.75, 4.0, 4);
+        Rect face = new Rect(10, 20, 113, 90);
+        Rect patch = new Rect();
+        int area = 0;
+        for (int p = 0; p < grid.getPatchCount(); p++) {
+            grid.getPatch(p, face, patch);
+            assertTrue(patch.left >= face.left && patch.right <= face.right);
+            assertTrue(patch.top >= face.top && patch.bottom <= face.bottom);
+            area += patch.width() * patch.height();
+        }
+        assertEquals(face.width() * face.height(), area);
+        grid.getPatch(5, face, patch);
+        assertEquals(35, patch.left);
+        assertEquals(43, patch.top);
+        assertEquals(61, patch.right);
+        assertEquals(66, patch.bottom);
+    }
+
+    @Test
+    public void testFusionFollowsPulsePatches() {
+        PatchGrid grid = new PatchGrid(2, 2, WINDOW, FS, 0.75, 4.0, 4);
+        grid.setFusedPatches(2);
+        Random random = new Random(1);
+        double pulse = 1.2;
+        double[] sample = new double[4];
+        double[] fused = new double[WINDOW];
+        double[] reference = new double[WINDOW];
+        for (int t = 0; t < 4 * WINDOW; t++) {
+            double s = Math.sin(2.0 * Math.PI * pulse * t / FS);
+            // patches 1 and 2 see the pulse, 0 and 3 only broadband noise
+            sample[0] = 20.0 + 2.0 * random.nextGaussian();
+            sample[1] = 18.0 + s + 0.2 * random.nextGaussian();
+            sample[2] = 19.0 + s + 0.2 * random.nextGaussian();
+            sample[3] = 21.0 + 2.0 * random.nextGaussian();
+            double y = grid.push(sample);
+            if (t >= 3 * WINDOW) {
+                fused[t - 3 * WINDOW] = y;
+                reference[t - 3 * WINDOW] = grid.getFiltered(1);
+            }
+        }
+        assertTrue(grid.getSnr(1) > 10.0 * grid.getSnr(0));
+        assertTrue(grid.getSnr(2) > 10.0 * grid.getSnr(3));
+        assertTrue(correlation(fused, reference) > 0.95);
+
+        // each patch keeps its last window of filtered samples
+        SignalRingBuffer signal = grid.getSignal(1);
+        assertEquals(WINDOW, signal.size());
+        assertEquals(reference[WINDOW - 1], signal.getLast(0), 0.0);
+        assertEquals(reference[0], signal.get(0, 0), 0.0);
+        grid.reset();
+        assertEquals(0, grid.getSignal(1).size());
+    }
+
+    @Test
+    public void testClippedPatchIsReported() {
+        // a uniform 160x120 frame, drawn unscaled and unrotated
+        int[] frame = new int[160 * 120];
+        Arrays.fill(frame, 0xffc08070);
+        YuvRoiSampler sampler = new YuvRoiSampler();
+        sampler.setFrame(frame, 160, 120);
+        sampler.setViewGeometry(120, 0);
+        IntegralImage integral = new IntegralImage();
+        PatchGrid grid = new PatchGrid(2, 2, WINDOW, FS, 0.75, 4.0, 4);
+        double[] sample = new double[4];
+
+        Rect inside = new Rect(20, 20, 80, 80);
+        sampler.integrate(inside, integral);
+        assertTrue(grid.sample(sampler, integral, inside, sample));
+        double hue = sample[0];
+        assertEquals(hue, sample[3], 0.0);
+
+        // the right column of patches lies past the frame edge
+        Arrays.fill(sample, -1.0);
+        Rect clipped = new Rect(80, 20, 200, 80);
+        sampler.integrate(clipped, integral);
+        assertFalse(grid.sample(sampler, integral, clipped, sample));
+        assertEquals(hue, sample[0], 0.0);
+        assertEquals(-1.0, sample[1], 0.0);
+    }
+
+    private static double correlation(double[] a, double[] b) {
+        double ab = 0.0;
+        double aa = 0.0;
+        double bb = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            ab += a[i] * b[i];
+            aa += a[i] * a[i];
+            bb += b[i] * b[i];
+        }
+        return ab / Math.sqrt(aa * bb);
+    }
+}
@@ -0,0 +1,215 @@
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.tzutalin.dlibtest.PulseRateEstimator;
+import com.tzutalin.dlibtest.PulseRateEstimators;
+import com.tzutalin.dlibtest.PyMathBridge;
+import com.tzutalin.dlibtest.UniformResampler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs every {@link PulseRateEstimator} backend on the same three-ROI traces and
+ * checks that they agree with the known pulse and with each other.
+ * <p>
+ * Besides the synthetic traces, every recording listed in
+ * {@link #RECORDED_TRACES} is replayed through a {@link UniformResampler}, as
+ * the camera pipeline does. A recording is a test resource with one frame per
+ * line, <code>timestampNanos,roi0,roi1,roi2</code>, and <code>#</code> comment
+ * lines; a <code># bpm=</code> line gives the reference pulse. Recordings are
+ * captured with <code>OnGetImageListener.LOG_ROI_TRACE</code> enabled, from
+ * the text after <code>RoiTrace:</code> in
+ * <code>adb logcat -s OnGetImageListener</code>.
+ * <p>
+ * The Python backend is only compared where Chaquopy can be started.
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class PulseRateEstimatorParityTest {
+
+    private static final int WINDOW_SIZE = 150;
+    private static final double FS = 30.0;
+    private static final double LOWCUT = 0.75;
+    private static final double HIGHCUT = 4.0;
+    private static final int ORDER = 4;
+    // One DFT bin of the 150 sample window at 30 Hz, in beats per minute; the test
+    // pulses sit on bin centres so that every backend should land on the same bin.
+    private static final double BIN_BPM = FS / WINDOW_SIZE * 60.0;
+
+    private static final String[] RECORDED_TRACES = {
+            "traces/roi_trace_1.csv",
+    };
+
+    private static boolean sPythonReady;
+
+    @BeforeClass
+    public static void startPython() {
+        try {
+            PyMathBridge.startAsync(InstrumentationRegistry.getTargetContext());
+            PyMathBridge.getNpScipy();
+            sPythonReady = true;
+        } catch (RuntimeException | LinkageError e) {
+            sPythonReady = false;
+        }
+    }
+
+    private static PulseRateEstimators.Backend[] javaBackends() {
+        return new PulseRateEstimators.Backend[]{
+                PulseRateEstimators.Backend.JAVA, PulseRateEstimators.Backend.FAST_ICA};
+    }
+
+    @Test
+    public void testJavaBackendsAgreeOnRestingPulse() {
+        checkParity(trace(72.0, 300, 1), 72.0, javaBackends());
+    }
+
+    @Test
+    public void testJavaBackendsAgreeOnElevatedPulse() {
+        checkParity(trace(120.0, 300, 2), 120.0, javaBackends());
+    }
+
+    @Test
+    public void testPythonBackendAgreesWithJava() {
+        assumeTrue("Python could not be started", sPythonReady);
+        PulseRateEstimators.Backend[] backends = PulseRateEstimators.Backend.values();
+        checkParity(trace(72.0, 300, 1), 72.0, backends);
+        checkParity(trace(120.0, 300, 2), 120.0, backends);
+    }
+
+    @Test
+    public void testBackendsAgreeOnRecordedTraces() throws IOException {
+        int replayed = 0;
+        for (String name : RECORDED_TRACES) {
+            InputStream in = PulseRateEstimatorParityTest.class.getClassLoader().getResourceAsStream(name);
+            if (in == null) {
+                continue;
+            }
+            Recording recording = Recording.read(in);
+            double[][] grid = recording.resample();
+            checkParity(grid, recording.bpm, javaBackends());
+            if (sPythonReady) {
+                checkParity(grid, recording.bpm, PulseRateEstimators.Backend.values());
+            }
+            replayed++;
+        }
+        assumeTrue("no recorded trace in the test resources", replayed > 0);
+    }
+
+    @Test
+    public void testGapRestartsTheWindow() {
+        double[][] trace = trace(72.0, WINDOW_SIZE, 3);
+        PulseRateEstimator estimator = PulseRateEstimators.create(
+                PulseRateEstimators.Backend.JAVA, 3, WINDOW_SIZE, FS, LOWCUT, HIGHCUT, ORDER);
+        for (int i = 0; i < WINDOW_SIZE - 1; i++) {
+            estimator.push(trace[i], gridTime(i));
+        }
+        // two grid samples missing before the last one
+        estimator.push(trace[WINDOW_SIZE - 1], gridTime(WINDOW_SIZE + 1));
+        assertFalse(estimator.isReady());
+    }
+
+    private static long gridTime(int i) {
+        return (long) (i * 1e9 / FS);
+    }
+
+    /**
+     * Feeds one uniformly sampled trace to each backend and checks the
+     * estimates against the reference pulse, if known, and against each other.
+     */
+    private static void checkParity(double[][] trace, double bpm, PulseRateEstimators.Backend[] backends) {
+        double[] estimates = new double[backends.length];
+        for (int b = 0; b < backends.length; b++) {
+            PulseRateEstimator estimator = PulseRateEstimators.create(
+                    backends[b], 3, WINDOW_SIZE, FS, LOWCUT, HIGHCUT, ORDER);
+            for (int i = 0; i < trace.length; i++) {
+                estimator.push(trace[i], gridTime(i));
+            }
+            assertTrue(backends[b] + " not ready", estimator.isReady());
+            estimates[b] = estimator.estimate();
+            if (!Double.isNaN(bpm)) {
+                assertEquals(backends[b].toString(), bpm, estimates[b], BIN_BPM);
+            }
+        }
+        for (int b = 1; b < estimates.length; b++) {
+            assertEquals(backends[b].toString(), estimates[0], estimates[b], BIN_BPM);
+        }
+    }
+
+    /**
+     * Three ROI hue traces sharing one pulse, mixed with motion, drift and noise.
+     */
+    private static double[][] trace(double bpm, int length, long seed) {
+        Random random = new Random(seed);
+        double[][] samples = new double[length][3];
+        for (int i = 0; i < length; i++) {
+            double t = i / FS;
+            double pulse = Math.sin(2.0 * Math.PI * bpm / 60.0 * t);
+            double motion = 3.0 * Math.sin(2.0 * Math.PI * 0.3 * t) + 0.02 * i;
+            samples[i][0] = 20.0 + 0.5 * pulse + motion + 0.3 * random.nextGaussian();
+            samples[i][1] = 22.0 + 0.8 * pulse + 0.7 * motion + 0.3 * random.nextGaussian();
+            samples[i][2] = 21.0 + 0.3 * pulse + 1.2 * motion + 0.3 * random.nextGaussian();
+        }
+        return samples;
+    }
+
+    /**
+     * A recorded three-ROI trace with its camera timestamps.
+     */
+    private static final class Recording {
+        final List<Long> times = new ArrayList<>();
+        final List<double[]> samples = new ArrayList<>();
+        double bpm = Double.NaN;
+
+        static Recording read(InputStream in) throws IOException {
+            Recording recording = new Recording();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.startsWith("# bpm=")) {
+                        recording.bpm = Double.parseDouble(line.substring(6).trim());
+                    } else if (!line.isEmpty() && !line.startsWith("#")) {
+                        String[] fields = line.split(",");
+                        recording.times.add(Long.parseLong(fields[0].trim()));
+                        recording.samples.add(new double[]{Double.parseDouble(fields[1]),
+                                Double.parseDouble(fields[2]), Double.parseDouble(fields[3])});
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return recording;
+        }
+
+        /** Returns the trace on the uniform grid the estimators expect. */
+        double[][] resample() {
+            UniformResampler resampler = new UniformResampler(3, FS, UniformResampler.Interpolation.CUBIC);
+            List<double[]> grid = new ArrayList<>();
+            double[] sample = new double[3];
+            for (int i = 0; i < samples.size(); i++) {
+                resampler.push(samples.get(i), times.get(i));
+                while (resampler.poll(sample) != UniformResampler.NO_SAMPLE) {
+                    grid.add(sample.clone());
+                }
+            }
+            return grid.toArray(new double[grid.size()][]);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.SignalRingBuffer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks chronological addressing of the ring buffer before and after it
+ * wraps around.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SignalRingBufferTest {
+
+    private static final int CAPACITY = 5;
+
+    /** Channel c of sample t holds 100 * c + t, so every value is traceable. */
+    private static SignalRingBuffer filled(int samples) {
+        SignalRingBuffer buffer = new SignalRingBuffer(2, CAPACITY);
+        double[] sample = new double[2];
+        for (int t = 0; t < samples; t++) {
+            sample[0] = t;
+            sample[1] = 100 + t;
+            buffer.push(sample);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void testBeforeWrapping() {
+        SignalRingBuffer buffer = filled(3);
+        assertEquals(3, buffer.size());
+        assertEquals(3, buffer.getTotalCount());
+        assertEquals(0.0, buffer.get(0, 0), 0.0);
+        assertEquals(102.0, buffer.getLast(1), 0.0);
+    }
+
+    @Test
+    public void testWrapAroundKeepsNewestSamples() {
+        // every head position of the next push, over several laps
+        for (int samples = CAPACITY; samples < 4 * CAPACITY; samples++) {
+            SignalRingBuffer buffer = filled(samples);
+            assertEquals(CAPACITY, buffer.size());
+            assertEquals(samples, buffer.getTotalCount());
+            int oldest = samples - CAPACITY;
+            for (int i = 0; i < CAPACITY; i++) {
+                assertEquals(oldest + i, buffer.get(0, i), 0.0);
+                assertEquals(100 + oldest + i, buffer.get(1, i), 0.0);
+            }
+            assertEquals(samples - 1, buffer.getLast(0), 0.0);
+        }
+    }
+
+    @Test
+    public void testSnapshotAcrossTheSeam() {
+        for (int samples = CAPACITY; samples < 3 * CAPACITY; samples++) {
+            SignalRingBuffer buffer = filled(samples);
+            for (int length = 1; length <= CAPACITY; length++) {
+                double[] output = new double[length + 1];
+                buffer.snapshot(1, length, output, 1);
+                for (int i = 0; i < length; i++) {
+                    assertEquals(100 + samples - length + i, output[i + 1], 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWindowReadsThrough() {
+        SignalRingBuffer buffer = new SignalRingBuffer(1, CAPACITY);
+        SignalRingBuffer.Window window = buffer.window(0, 3);
+        for (int t = 0; t < 2; t++) {
+            buffer.push(t);
+        }
+        assertFalse(window.isFull());
+        for (int t = 2; t < 13; t++) {
+            buffer.push(t);
+            assertTrue(window.isFull());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(t - 2 + i, window.get(i), 0.0);
+            }
+        }
+        double[] copy = new double[3];
+        window.copyTo(copy);
+        assertEquals(10.0, copy[0], 0.0);
+        assertEquals(12.0, copy[2], 0.0);
+    }
+
+    @Test
+    public void testClearStartsOver() {
+        SignalRingBuffer buffer = filled(7);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getTotalCount());
+        buffer.push(new double[]{42.0, 142.0});
+        assertEquals(1, buffer.size());
+        assertEquals(42.0, buffer.get(0, 0), 0.0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOverwrittenSamplesAreGone() {
+        filled(8).get(0, CAPACITY);
+    }
+}
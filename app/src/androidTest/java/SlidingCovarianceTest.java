@@ -0,0 +1,141 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.SlidingCovariance;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the rank-k covariance update against a batch covariance of the same
+ * window.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SlidingCovarianceTest {
+
+    private static final int CHANNELS = 3;
+    private static final int N = 150;
+
+    /** Correlated RGB-like samples around a large offset, sample-major. */
+    private static double[] trace(long seed, int samples) {
+        Random random = new Random(seed);
+        double[] x = new double[samples * CHANNELS];
+        for (int s = 0; s < samples; s++) {
+            double common = Math.sin(0.2 * s) + 0.3 * random.nextGaussian();
+            x[s * CHANNELS] = 180.0 + common + 0.1 * random.nextGaussian();
+            x[s * CHANNELS + 1] = 120.0 + 0.5 * common + 0.2 * random.nextGaussian();
+            x[s * CHANNELS + 2] = 90.0 - 0.2 * common + 0.1 * random.nextGaussian();
+        }
+        return x;
+    }
+
+    private static void assertMatchesBatch(SlidingCovariance cov, double[] x, int from, int to) {
+        int count = to - from;
+        double[] mean = new double[CHANNELS];
+        for (int s = from; s < to; s++) {
+            for (int i = 0; i < CHANNELS; i++) {
+                mean[i] += x[s * CHANNELS + i];
+            }
+        }
+        for (int i = 0; i < CHANNELS; i++) {
+            mean[i] /= count;
+        }
+        double[][] expected = new double[CHANNELS][CHANNELS];
+        for (int s = from; s < to; s++) {
+            for (int i = 0; i < CHANNELS; i++) {
+                for (int j = 0; j < CHANNELS; j++) {
+                    expected[i][j] += (x[s * CHANNELS + i] - mean[i]) * (x[s * CHANNELS + j] - mean[j]) / count;
+                }
+            }
+        }
+
+        assertEquals(count, cov.size());
+        double[] actualMean = cov.getMean(new double[CHANNELS]);
+        double[][] actual = cov.getCovariance(new double[CHANNELS][CHANNELS]);
+        for (int i = 0; i < CHANNELS; i++) {
+            assertEquals(mean[i], actualMean[i], 1e-10);
+            for (int j = 0; j < CHANNELS; j++) {
+                assertEquals("(" + i + ", " + j + ")", expected[i][j], actual[i][j], 1e-9);
+                assertEquals(actual[i][j], actual[j][i], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testSingleSamplesMatchBatch() {
+        double[] x = trace(1, 3 * N + 11);
+        SlidingCovariance cov = new SlidingCovariance(CHANNELS, N);
+        double[] sample = new double[CHANNELS];
+        for (int s = 0; s < 3 * N + 11; s++) {
+            System.arraycopy(x, s * CHANNELS, sample, 0, CHANNELS);
+            cov.push(sample);
+            if (s % 7 == 0) {
+                assertMatchesBatch(cov, x, Math.max(0, s + 1 - N), s + 1);
+            }
+        }
+        assertTrue(cov.isFull());
+    }
+
+    @Test
+    public void testBlocksMatchBatch() {
+        // block sizes that split the window unevenly and straddle the ring's seam
+        int[] blocks = {1, 5, 17, 30, 64, 149, 150, 3, 29};
+        int total = 0;
+        for (int k : blocks) {
+            total += k;
+        }
+        double[] x = trace(2, 4 * total);
+        SlidingCovariance cov = new SlidingCovariance(CHANNELS, N);
+        double[] block = new double[N * CHANNELS];
+        int s = 0;
+        for (int lap = 0; lap < 4; lap++) {
+            for (int k : blocks) {
+                System.arraycopy(x, s * CHANNELS, block, 0, k * CHANNELS);
+                cov.push(block, k);
+                s += k;
+                assertMatchesBatch(cov, x, Math.max(0, s - N), s);
+            }
+        }
+    }
+
+    @Test
+    public void testLongRunDoesNotDrift() {
+        int samples = 200 * N + 77;
+        double[] x = trace(3, samples);
+        SlidingCovariance cov = new SlidingCovariance(CHANNELS, N);
+        double[] block = new double[5 * CHANNELS];
+        for (int s = 0; s + 5 <= samples; s += 5) {
+            System.arraycopy(x, s * CHANNELS, block, 0, block.length);
+            cov.push(block, 5);
+        }
+        int end = samples - samples % 5;
+        assertMatchesBatch(cov, x, end - N, end);
+    }
+
+    @Test
+    public void testClearEmptiesTheWindow() {
+        SlidingCovariance cov = new SlidingCovariance(CHANNELS, N);
+        cov.push(trace(4, 10), 10);
+        cov.clear();
+        assertEquals(0, cov.size());
+        assertFalse(cov.isFull());
+        double[][] c = cov.getCovariance(new double[CHANNELS][CHANNELS]);
+        for (int i = 0; i < CHANNELS; i++) {
+            for (int j = 0; j < CHANNELS; j++) {
+                assertEquals(0.0, c[i][j], 0.0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlockLongerThanWindowIsRejected() {
+        new SlidingCovariance(CHANNELS, 4).push(new double[5 * CHANNELS], 5);
+    }
+}
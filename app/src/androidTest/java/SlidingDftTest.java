@@ -0,0 +1,111 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.tzutalin.dlibtest.SlidingDft;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the damped sliding DFT tracks the exact DFT of the window and
+ * does not drift over long runs.
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class SlidingDftTest {
+
+    private static final int N = 150;
+    private static final double FS = 30.0;
+
+    private static double sample(Random random, int t) {
+        return Math.sin(2.0 * Math.PI * 1.3 * t / FS) + 0.4 * Math.sin(2.0 * Math.PI * 2.9 * t / FS)
+                + 0.2 * random.nextGaussian();
+    }
+
+    /**
+     * Asserts that every tracked bin is within 0.05% of the peak power of the
+     * exact DFT of the last N samples, as the class documents.
+     */
+    private static void assertMatchesExactDft(SlidingDft dft, double[] window, int head) {
+        int bins = dft.getBinCount();
+        double[] exact = new double[bins];
+        double peak = 0.0;
+        for (int b = 0; b < bins; b++) {
+            int k = (int) Math.round(dft.getFrequency(b) * N / FS);
+            double re = 0.0;
+            double im = 0.0;
+            for (int j = 0; j < N; j++) {
+                double angle = -2.0 * Math.PI * ((long) k * j % N) / N;
+                double x = window[(head + j) % N];
+                re += x * Math.cos(angle);
+                im += x * Math.sin(angle);
+            }
+            exact[b] = re * re + im * im;
+            peak = Math.max(peak, exact[b]);
+        }
+        for (int b = 0; b < bins; b++) {
+            assertEquals("bin " + b, exact[b], dft.getPower(b), 5e-4 * peak);
+        }
+    }
+
+    @Test
+    public void testBinsCoverTheBand() {
+        SlidingDft dft = new SlidingDft(N, FS, 0.75, 4.0);
+        // bins are fs / n = 0.2 Hz apart: 0.8 Hz to 4.0 Hz
+        assertEquals(17, dft.getBinCount());
+        assertEquals(0.8, dft.getFrequency(0), 1e-12);
+        assertEquals(4.0, dft.getFrequency(16), 1e-12);
+    }
+
+    @Test
+    public void testMatchesExactDftOnceFull() {
+        SlidingDft dft = new SlidingDft(N, FS, 0.75, 4.0);
+        Random random = new Random(1);
+        double[] window = new double[N];
+        for (int t = 0; t < N; t++) {
+            assertFalse(dft.isReady());
+            window[t] = sample(random, t);
+            dft.push(window[t]);
+        }
+        assertTrue(dft.isReady());
+        assertMatchesExactDft(dft, window, 0);
+        assertEquals(1.3, dft.getPeakFrequency(), 0.1 + 1e-9);
+    }
+
+    @Test
+    public void testDoesNotDriftOverLongRuns() {
+        SlidingDft dft = new SlidingDft(N, FS, 0.75, 4.0);
+        Random random = new Random(2);
+        double[] window = new double[N];
+        // two hours of samples at 30 Hz
+        int samples = 2 * 60 * 60 * 30;
+        for (int t = 0; t < samples; t++) {
+            window[t % N] = sample(random, t);
+            dft.push(window[t % N]);
+            if (t >= N && t % 20000 == 0) {
+                assertMatchesExactDft(dft, window, (t + 1) % N);
+            }
+        }
+        assertMatchesExactDft(dft, window, samples % N);
+    }
+
+    @Test
+    public void testResetClearsTheWindow() {
+        SlidingDft dft = new SlidingDft(N, FS, 0.75, 4.0);
+        Random random = new Random(3);
+        for (int t = 0; t < 2 * N; t++) {
+            dft.push(sample(random, t));
+        }
+        dft.reset();
+        assertFalse(dft.isReady());
+        for (int b = 0; b < dft.getBinCount(); b++) {
+            assertEquals(0.0, dft.getPower(b), 0.0);
+        }
+    }
+}
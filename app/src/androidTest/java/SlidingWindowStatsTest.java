@@ -0,0 +1,158 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.SignalRingBuffer;
+import com.tzutalin.dlibtest.SlidingWindowStats;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the sliding Welford update against a two-pass mean and variance of
+ * the same window.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SlidingWindowStatsTest {
+
+    private static final int N = 150;
+
+    /** Returns the two-pass mean and population variance of x[from, to). */
+    private static double[] twoPass(double[] x, int from, int to) {
+        double sum = 0.0;
+        for (int i = from; i < to; i++) {
+            sum += x[i];
+        }
+        double mean = sum / (to - from);
+        double sq = 0.0;
+        for (int i = from; i < to; i++) {
+            sq += (x[i] - mean) * (x[i] - mean);
+        }
+        return new double[]{mean, sq / (to - from)};
+    }
+
+    private static double[] trace(long seed, int length, double offset) {
+        Random random = new Random(seed);
+        double[] x = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = offset + Math.sin(0.3 * i) + 0.1 * random.nextGaussian();
+        }
+        return x;
+    }
+
+    @Test
+    public void testFillingMatchesTwoPass() {
+        double[] x = trace(1, N, 0.0);
+        SlidingWindowStats stats = new SlidingWindowStats(N);
+        for (int i = 0; i < N; i++) {
+            assertFalse(stats.isFull());
+            stats.push(x[i]);
+            double[] expected = twoPass(x, 0, i + 1);
+            assertEquals(i + 1, stats.size());
+            assertEquals(expected[0], stats.getMean(), 1e-12);
+            assertEquals(expected[1], stats.getVariance(), 1e-12);
+        }
+        assertTrue(stats.isFull());
+    }
+
+    @Test
+    public void testReplacementMatchesTwoPassWithLargeOffset() {
+        // an offset this large cancels catastrophically in sum / sum-of-squares form
+        double offset = 1e6;
+        double[] x = trace(2, 40 * N + 17, offset);
+        SlidingWindowStats stats = new SlidingWindowStats(N);
+        for (int i = 0; i < x.length; i++) {
+            stats.push(x[i]);
+            if (i >= N) {
+                double[] expected = twoPass(x, i + 1 - N, i + 1);
+                assertEquals("sample " + i, expected[0], stats.getMean(), 1e-9 * offset);
+                assertEquals("sample " + i, expected[1], stats.getVariance(), 1e-6 * expected[1]);
+            }
+        }
+    }
+
+    @Test
+    public void testPeriodicRecomputeBoundsDrift() {
+        // stop one push short of a recompute, where the drift is largest
+        double[] x = trace(3, 1001 * N - 1, 50.0);
+        SlidingWindowStats stats = new SlidingWindowStats(N);
+        for (double v : x) {
+            stats.push(v);
+        }
+        double mean = stats.getMean();
+        double variance = stats.getVariance();
+        // the accumulated moments agree with an exact recomputation after
+        // 150000 samples, so the drift does not grow with the session
+        stats.recompute();
+        assertEquals(stats.getMean(), mean, 1e-12);
+        assertEquals(stats.getVariance(), variance, 1e-9 * variance);
+        double[] expected = twoPass(x, x.length - N, x.length);
+        assertEquals(expected[0], stats.getMean(), 1e-12);
+        assertEquals(expected[1], stats.getVariance(), 1e-12);
+    }
+
+    @Test
+    public void testZNormalizeIsOldestFirst() {
+        double[] x = trace(4, N + 37, 3.0);
+        SlidingWindowStats stats = new SlidingWindowStats(N);
+        for (double v : x) {
+            stats.push(v);
+        }
+        double[] expected = twoPass(x, 37, x.length);
+        double std = Math.sqrt(expected[1]);
+        double[] array = new double[N];
+        DoubleBuffer buffer = DoubleBuffer.allocate(N);
+        stats.zNormalize(array);
+        stats.zNormalize(buffer);
+        assertEquals(0, buffer.position());
+        for (int i = 0; i < N; i++) {
+            double z = (x[37 + i] - expected[0]) / std;
+            assertEquals(z, array[i], 1e-9);
+            assertEquals(z, buffer.get(i), 1e-9);
+        }
+    }
+
+    @Test
+    public void testConstantWindowNormalizesToZeros() {
+        SlidingWindowStats stats = new SlidingWindowStats(4);
+        for (int i = 0; i < 9; i++) {
+            stats.push(2.5);
+        }
+        assertEquals(0.0, stats.getVariance(), 1e-12);
+        double[] output = new double[4];
+        stats.zNormalize(output);
+        for (double z : output) {
+            assertEquals(0.0, z, 0.0);
+        }
+    }
+
+    @Test
+    public void testTracksOneChannelOfASharedBuffer() {
+        double[] x = trace(5, 3 * N + 5, 40.0);
+        SignalRingBuffer buffer = new SignalRingBuffer(2, N);
+        SlidingWindowStats stats = new SlidingWindowStats(buffer, 1);
+        double[] sample = new double[2];
+        for (int i = 0; i < x.length; i++) {
+            sample[0] = -i;
+            sample[1] = x[i];
+            stats.push(sample);
+            double[] expected = twoPass(x, Math.max(0, i + 1 - N), i + 1);
+            assertEquals(expected[0], stats.getMean(), 1e-9);
+            assertEquals(expected[1], stats.getVariance(), 1e-9);
+        }
+        // the window is the buffer's own storage, not a second copy
+        assertEquals(N, buffer.size());
+        assertEquals(x[x.length - 1], buffer.getLast(1), 0.0);
+        assertEquals(-(x.length - 1), buffer.getLast(0), 0.0);
+
+        stats.clear();
+        assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,173 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.DenseMatrix;
+import com.tzutalin.dlibtest.EigenValueDecompositionSymm;
+import com.tzutalin.dlibtest.SmallSymmetricEigen;
+import com.tzutalin.dlibtest.SymmetricEigenSolver;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the allocation-free eigensolvers against EigenValueDecompositionSymm:
+ * ascending eigenvalues, eigenvectors as columns, and the sign of each
+ * eigenvector.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SymmetricEigenSolverTest {
+
+    private static double[][] randomSymmetric(Random random, int n) {
+        double[][] a = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                a[i][j] = random.nextGaussian();
+                a[j][i] = a[i][j];
+            }
+        }
+        return a;
+    }
+
+    private static double[] flatten(double[][] a) {
+        int n = a.length;
+        double[] res = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a[i], 0, res, i * n, n);
+        }
+        return res;
+    }
+
+    /** Asserts ascending eigenvalues and A v = d v for every column v. */
+    private static void assertDecomposes(double[][] a, double[] d, double[][] v) {
+        int n = a.length;
+        for (int k = 1; k < n; k++) {
+            assertTrue("eigenvalues not ascending", d[k - 1] <= d[k]);
+        }
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                double av = 0.0;
+                for (int j = 0; j < n; j++) {
+                    av += a[i][j] * v[j][k];
+                }
+                assertEquals(d[k] * v[i][k], av, 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesReferenceIncludingSign() {
+        Random random = new Random(1);
+        for (int n : new int[]{1, 2, 3, 4, 5, 8}) {
+            for (int trial = 0; trial < 20; trial++) {
+                double[][] a = randomSymmetric(random, n);
+                EigenValueDecompositionSymm reference = new EigenValueDecompositionSymm(DenseMatrix.from(a));
+                double[] expectedD = reference.getRealEigenvalues();
+                double[][] expectedV = reference.getV();
+
+                SymmetricEigenSolver solver = new SymmetricEigenSolver(n);
+                double[] d = new double[n];
+                double[] v = new double[n * n];
+                solver.decompose(flatten(a), d, v);
+
+                // same tred2/tql2 steps, so the columns agree in sign as well
+                double[][] columns = new double[n][n];
+                for (int i = 0; i < n; i++) {
+                    assertEquals(expectedD[i], d[i], 1e-12);
+                    for (int j = 0; j < n; j++) {
+                        assertEquals(expectedV[i][j], v[i * n + j], 1e-12);
+                        columns[i][j] = v[i * n + j];
+                    }
+                }
+                assertDecomposes(a, d, columns);
+            }
+        }
+    }
+
+    @Test
+    public void testInPlaceAndUncheckedInput() {
+        Random random = new Random(2);
+        int n = 5;
+        double[][] a = randomSymmetric(random, n);
+        SymmetricEigenSolver solver = new SymmetricEigenSolver(n);
+        double[] expectedD = new double[n];
+        double[] expectedV = new double[n * n];
+        solver.decompose(flatten(a), expectedD, expectedV);
+
+        // only the lower triangle of an unchecked input is read
+        double[] in = flatten(a);
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                in[i * n + j] = Double.NaN;
+            }
+        }
+        solver.setCheckSymmetry(false);
+        double[] d = new double[n];
+        solver.decompose(in, d, in);
+        for (int i = 0; i < n; i++) {
+            assertEquals(expectedD[i], d[i], 0.0);
+        }
+        for (int k = 0; k < n * n; k++) {
+            assertEquals(expectedV[k], in[k], 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonsymmetricInputIsRejected() {
+        double[] in = {1.0, 2.0, 2.5, 1.0};
+        new SymmetricEigenSolver(2).decompose(in, new double[2], new double[4]);
+    }
+
+    @Test
+    public void testSmallSolverMatchesReferenceUpToSign() {
+        Random random = new Random(3);
+        for (int n = 1; n <= 3; n++) {
+            for (int trial = 0; trial < 50; trial++) {
+                double[][] a = randomSymmetric(random, n);
+                EigenValueDecompositionSymm reference = new EigenValueDecompositionSymm(DenseMatrix.from(a));
+                double[] expectedD = reference.getRealEigenvalues();
+                double[][] expectedV = reference.getV();
+
+                double[] d = new double[n];
+                double[][] v = new double[n][n];
+                SmallSymmetricEigen.decompose(a, d, v);
+                assertDecomposes(a, d, v);
+
+                // Jacobi rotations fix a different sign than QL; the columns
+                // agree once each is flipped onto the reference
+                for (int k = 0; k < n; k++) {
+                    assertEquals(expectedD[k], d[k], 1e-12);
+                    double dot = 0.0;
+                    for (int i = 0; i < n; i++) {
+                        dot += expectedV[i][k] * v[i][k];
+                    }
+                    double sign = dot < 0.0 ? -1.0 : 1.0;
+                    assertEquals(1.0, Math.abs(dot), 1e-10);
+                    for (int i = 0; i < n; i++) {
+                        assertEquals(expectedV[i][k], sign * v[i][k], 1e-10);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSmallSolverOrdersDiagonalInput() {
+        double[][] a = {{3.0, 0.0, 0.0}, {0.0, -1.0, 0.0}, {0.0, 0.0, 2.0}};
+        double[] d = new double[3];
+        double[][] v = new double[3][3];
+        SmallSymmetricEigen.decompose(a, d, v);
+        assertEquals(-1.0, d[0], 0.0);
+        assertEquals(2.0, d[1], 0.0);
+        assertEquals(3.0, d[2], 0.0);
+        // the columns are the permuted unit vectors
+        assertEquals(1.0, Math.abs(v[1][0]), 0.0);
+        assertEquals(1.0, Math.abs(v[2][1]), 0.0);
+        assertEquals(1.0, Math.abs(v[0][2]), 0.0);
+    }
+}
@@ -0,0 +1,101 @@
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.UniformResampler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the uniform grid and that dropouts longer than the maximum gap
+ * restart it instead of being filled in.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class UniformResamplerTest {
+
+    private static final double FS = 30.0;
+    private static final long PERIOD = (long) (1e9 / FS);
+
+    /** Pushes a ramp sample at time t and returns the grid samples it released. */
+    private static int pushAndDrain(UniformResampler resampler, long t, double[] out) {
+        resampler.push(new double[]{t * 1e-9}, t);
+        int polled = 0;
+        while (resampler.poll(out) != UniformResampler.NO_SAMPLE) {
+            polled++;
+        }
+        return polled;
+    }
+
+    @Test
+    public void testLinearRampOnGrid() {
+        UniformResampler resampler = new UniformResampler(1, FS, UniformResampler.Interpolation.LINEAR);
+        double[] out = new double[1];
+        long t = 0;
+        resampler.push(new double[]{0.0}, t);
+        long grid = 0;
+        for (int i = 0; i < 50; i++) {
+            // jittered frame intervals around 40 ms
+            t += 40000000L + (i % 3) * 3000000L;
+            resampler.push(new double[]{t * 1e-9}, t);
+            long g;
+            while ((g = resampler.poll(out)) != UniformResampler.NO_SAMPLE) {
+                assertEquals(Math.round(grid * 1e9 / FS), g);
+                assertEquals(g * 1e-9, out[0], 1e-12);
+                grid++;
+            }
+        }
+        assertTrue(grid > 50);
+    }
+
+    @Test
+    public void testLongGapRestartsTheGrid() {
+        UniformResampler resampler = new UniformResampler(1, FS, UniformResampler.Interpolation.CUBIC);
+        double[] out = new double[1];
+        assertTrue(resampler.push(new double[]{0.0}, 0));
+        long t = 0;
+        for (int i = 0; i < 10; i++) {
+            t += PERIOD;
+            assertFalse(resampler.push(new double[]{t * 1e-9}, t));
+            while (resampler.poll(out) != UniformResampler.NO_SAMPLE) {
+                // drain
+            }
+        }
+
+        // a three second dropout yields no interpolated samples
+        t += 3000000000L;
+        assertTrue(resampler.push(new double[]{t * 1e-9}, t));
+        assertEquals(UniformResampler.NO_SAMPLE, resampler.poll(out));
+        int polled = 0;
+        for (int i = 0; i < 5; i++) {
+            t += PERIOD;
+            polled += pushAndDrain(resampler, t, out);
+        }
+        // cubic segments trail the newest input by one interval
+        assertTrue(polled <= 5);
+    }
+
+    @Test
+    public void testShortGapIsInterpolated() {
+        UniformResampler resampler = new UniformResampler(1, FS, UniformResampler.Interpolation.LINEAR);
+        resampler.setMaxGap(10 * PERIOD);
+        double[] out = new double[1];
+        resampler.push(new double[]{0.0}, 0);
+        long t = Math.round(5e9 / FS);
+        assertFalse(resampler.push(new double[]{t * 1e-9}, t));
+        int polled = 0;
+        while (resampler.poll(out) != UniformResampler.NO_SAMPLE) {
+            polled++;
+        }
+        assertEquals(6, polled);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGapShorterThanAPeriodIsRejected() {
+        new UniformResampler(1, FS, UniformResampler.Interpolation.LINEAR).setMaxGap(PERIOD / 2);
+    }
+}
@@ -0,0 +1,226 @@
+import android.graphics.Rect;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.tzutalin.dlibtest.Hue;
+import com.tzutalin.dlibtest.IntegralImage;
+import com.tzutalin.dlibtest.Yuv420;
+import com.tzutalin.dlibtest.YuvRoiSampler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the detector-to-sensor mapping and the ROI means on a synthetic
+ * 640x480 frame with padded rows and interleaved chroma.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class YuvRoiSamplerTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int Y_ROW_STRIDE = WIDTH + 16;
+    private static final int UV_ROW_STRIDE = WIDTH + 32;
+    private static final int UV_PIXEL_STRIDE = 2;
+    private static final int VIEW_SIZE = 224;
+
+    private final byte[] y = new byte[Y_ROW_STRIDE * HEIGHT];
+    private final byte[] u = new byte[UV_ROW_STRIDE * HEIGHT / 2];
+    private final byte[] v = new byte[UV_ROW_STRIDE * HEIGHT / 2];
+
+    @Test
+    public void testMappedRectCoversDrawnPixels() {
+        fillGradient();
+        YuvRoiSampler sampler = newSampler();
+        Rect view = new Rect(50, 60, 90, 80);
+        double scale = (double) VIEW_SIZE / HEIGHT;
+        double offsetX = (WIDTH - HEIGHT) / 2.0;
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            sampler.setViewGeometry(VIEW_SIZE, rotation);
+            Rect sensor = sampler.mapToSensor(view, new Rect());
+            for (int vy = view.top; vy < view.bottom; vy++) {
+                for (int vx = view.left; vx < view.right; vx++) {
+                    // where the centre of a detector pixel was drawn from
+                    double[] p = unrotate(vx + 0.5, vy + 0.5, rotation);
+                    int sx = (int) (p[0] / scale + offsetX);
+                    int sy = (int) (p[1] / scale);
+                    assertTrue(rotation + ": " + sx + ", " + sy,
+                            sx >= sensor.left && sx < sensor.right && sy >= sensor.top && sy < sensor.bottom);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMeansMatchPerPixelConversion() {
+        fillGradient();
+        YuvRoiSampler sampler = newSampler();
+        sampler.setViewGeometry(VIEW_SIZE, 90);
+        Rect view = new Rect(100, 40, 130, 70);
+        Rect sensor = sampler.mapToSensor(view, new Rect());
+        double green = 0.0;
+        for (int row = sensor.top; row < sensor.bottom; row++) {
+            for (int col = sensor.left; col < sensor.right; col++) {
+                int uv = (row >> 1) * UV_ROW_STRIDE + (col >> 1) * UV_PIXEL_STRIDE;
+                int argb = Yuv420.toArgb(y[row * Y_ROW_STRIDE + col] & 0xff, u[uv] & 0xff, v[uv] & 0xff);
+                green += (argb >> 8) & 0xff;
+            }
+        }
+        double[] means = new double[YuvRoiSampler.CHANNELS];
+        int count = sampler.sample(view, means);
+        assertEquals(sensor.width() * sensor.height(), count);
+        assertEquals(green / count, means[YuvRoiSampler.GREEN], 1e-9);
+    }
+
+    @Test
+    public void testUniformSkinTone() {
+        // Y = 150, U = 110, V = 160 converts to (207, 136, 119), a hue of about 11.6 degrees
+        Arrays.fill(y, (byte) 150);
+        Arrays.fill(u, (byte) 110);
+        Arrays.fill(v, (byte) 160);
+        int argb = Yuv420.toArgb(150, 110, 160);
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        YuvRoiSampler sampler = newSampler();
+        sampler.setViewGeometry(VIEW_SIZE, 90);
+        double[] means = new double[YuvRoiSampler.CHANNELS];
+        sampler.sample(new Rect(10, 10, 30, 20), means);
+        assertEquals(r, means[YuvRoiSampler.RED], 0.0);
+        assertEquals(g, means[YuvRoiSampler.GREEN], 0.0);
+        assertEquals(b, means[YuvRoiSampler.BLUE], 0.0);
+        assertEquals(60.0 * (g - b) / (r - b), means[YuvRoiSampler.HUE], 1.0 / Hue.SCALE);
+    }
+
+    @Test
+    public void testDirectBuffersMatchHeapArrays() {
+        fillGradient();
+        int[] heap = new int[WIDTH * HEIGHT];
+        int[] direct = new int[WIDTH * HEIGHT];
+        Yuv420.toArgb(y, u, v, heap, WIDTH, HEIGHT, Y_ROW_STRIDE, UV_ROW_STRIDE, UV_PIXEL_STRIDE, false);
+        ByteBuffer yBuffer = toDirect(y);
+        ByteBuffer uBuffer = toDirect(u);
+        ByteBuffer vBuffer = toDirect(v);
+        Yuv420.toArgb(yBuffer, uBuffer, vBuffer, direct, WIDTH, HEIGHT,
+                Y_ROW_STRIDE, UV_ROW_STRIDE, UV_PIXEL_STRIDE, false);
+        assertTrue(Arrays.equals(heap, direct));
+        assertEquals(0, yBuffer.position());
+
+        YuvRoiSampler sampler = newSampler();
+        sampler.setViewGeometry(VIEW_SIZE, 90);
+        Rect view = new Rect(100, 40, 130, 70);
+        double[] expected = new double[YuvRoiSampler.CHANNELS];
+        double[] actual = new double[YuvRoiSampler.CHANNELS];
+        sampler.sample(view, expected);
+        sampler.setFrame(yBuffer, uBuffer, vBuffer, WIDTH, HEIGHT, Y_ROW_STRIDE, UV_ROW_STRIDE, UV_PIXEL_STRIDE);
+        sampler.sample(view, actual);
+        for (int c = 0; c < YuvRoiSampler.CHANNELS; c++) {
+            assertEquals(expected[c], actual[c], 0.0);
+        }
+    }
+
+    @Test
+    public void testFrameConversionMatchesPerPixelConversion() {
+        fillGradient();
+        int[] full = new int[WIDTH * HEIGHT];
+        Yuv420.toArgb(toDirect(y), toDirect(u), toDirect(v), full, WIDTH, HEIGHT,
+                Y_ROW_STRIDE, UV_ROW_STRIDE, UV_PIXEL_STRIDE, false);
+        int[] half = new int[WIDTH * HEIGHT / 4];
+        Yuv420.toArgb(y, u, v, half, WIDTH, HEIGHT, Y_ROW_STRIDE, UV_ROW_STRIDE, UV_PIXEL_STRIDE, true);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int uv = (row >> 1) * UV_ROW_STRIDE + (col >> 1) * UV_PIXEL_STRIDE;
+                assertEquals(Yuv420.toArgb(y[row * Y_ROW_STRIDE + col] & 0xff, u[uv] & 0xff, v[uv] & 0xff),
+                        full[row * WIDTH + col]);
+                if ((row & 1) == 0 && (col & 1) == 0) {
+                    int yy = row * Y_ROW_STRIDE + col;
+                    int luma = (y[yy] & 0xff) + (y[yy + 1] & 0xff)
+                            + (y[yy + Y_ROW_STRIDE] & 0xff) + (y[yy + Y_ROW_STRIDE + 1] & 0xff);
+                    assertEquals(Yuv420.toArgb(luma >> 2, u[uv] & 0xff, v[uv] & 0xff),
+                            half[(row / 2) * (WIDTH / 2) + col / 2]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testArgbFrameMatchesPlanes() {
+        fillGradient();
+        int[] argb = new int[WIDTH * HEIGHT];
+        Yuv420.toArgb(y, u, v, argb, WIDTH, HEIGHT, Y_ROW_STRIDE, UV_ROW_STRIDE, UV_PIXEL_STRIDE, false);
+        YuvRoiSampler planes = newSampler();
+        YuvRoiSampler converted = new YuvRoiSampler();
+        converted.setFrame(argb, WIDTH, HEIGHT);
+        Rect face = new Rect(60, 40, 170, 190);
+        Rect roi = new Rect(100, 60, 130, 90);
+        double[] expected = new double[YuvRoiSampler.CHANNELS];
+        double[] actual = new double[YuvRoiSampler.CHANNELS];
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            planes.setViewGeometry(VIEW_SIZE, rotation);
+            converted.setViewGeometry(VIEW_SIZE, rotation);
+            assertEquals(planes.sample(roi, expected), converted.sample(roi, actual));
+            for (int c = 0; c < YuvRoiSampler.CHANNELS; c++) {
+                assertEquals(expected[c], actual[c], 1e-9);
+            }
+
+            IntegralImage planeTables = new IntegralImage();
+            IntegralImage argbTables = new IntegralImage();
+            planes.integrate(face, planeTables);
+            converted.integrate(face, argbTables);
+            assertEquals(planes.sample(planeTables, roi, expected), converted.sample(argbTables, roi, actual));
+            for (int c = 0; c < YuvRoiSampler.CHANNELS; c++) {
+                assertEquals(expected[c], actual[c], 1e-9);
+            }
+        }
+    }
+
+    private static ByteBuffer toDirect(byte[] plane) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(plane.length);
+        buffer.put(plane);
+        buffer.rewind();
+        return buffer;
+    }
+
+    private YuvRoiSampler newSampler() {
+        YuvRoiSampler sampler = new YuvRoiSampler();
+        sampler.setFrame(y, u, v, WIDTH, HEIGHT, Y_ROW_STRIDE, UV_ROW_STRIDE, UV_PIXEL_STRIDE);
+        return sampler;
+    }
+
+    private void fillGradient() {
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                y[row * Y_ROW_STRIDE + col] = (byte) (40 + (3 * row + col) % 180);
+            }
+        }
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                u[row * UV_ROW_STRIDE + col * UV_PIXEL_STRIDE] = (byte) (100 + (row + col) % 50);
+                v[row * UV_ROW_STRIDE + col * UV_PIXEL_STRIDE] = (byte) (140 + (2 * row) % 60);
+            }
+        }
+    }
+
+    /**
+     * Undoes a clockwise rotation of the detector bitmap about its centre.
+     */
+    private static double[] unrotate(double x, double y, int rotation) {
+        switch (rotation) {
+            case 90:
+                return new double[]{y, VIEW_SIZE - x};
+            case 180:
+                return new double[]{VIEW_SIZE - x, VIEW_SIZE - y};
+            case 270:
+                return new double[]{VIEW_SIZE - y, x};
+            default:
+                return new double[]{x, y};
+        }
+    }
+}
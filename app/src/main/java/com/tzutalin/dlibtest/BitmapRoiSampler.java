@@ -0,0 +1,56 @@
+package com.tzutalin.dlibtest;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * Averages colour over regions of interest of an ARGB bitmap.
+ * <p>
+ * Each region is fetched with a single <code>Bitmap.getPixels</code> into a
+ * reusable buffer and accumulated by {@link ColorStats}, instead of one
+ * <code>getPixel</code> and one <code>Color.RGBToHSV</code> JNI call (plus a
+ * float[3]) per pixel. Use it for sources that only exist as a bitmap; camera
+ * frames are better sampled from their planes with {@link YuvRoiSampler}.
+ * Instances are not thread safe.
+ */
+public class BitmapRoiSampler {
+
+    private final Rect clipped = new Rect();
+    private final ColorStats stats = new ColorStats();
+    private int[] pixels = new int[0];
+
+    /**
+     * Averages the colour of a region of a bitmap.
+     * @param bitmap the source
+     * @param roi the region, clipped to the bitmap
+     * @param res the destination for the {@link ColorStats#CHANNELS} means; left
+     * untouched if the clipped region is empty
+     * @return the number of pixels averaged
+     */
+    public int sample(Bitmap bitmap, Rect roi, double[] res) {
+        clipped.set(roi);
+        stats.clear();
+        if (!clipped.intersect(0, 0, bitmap.getWidth(), bitmap.getHeight())) {
+            return 0;
+        }
+        int width = clipped.width();
+        int height = clipped.height();
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        bitmap.getPixels(pixels, 0, width, clipped.left, clipped.top, width, height);
+        stats.add(pixels, 0, width, width, height);
+        stats.getMeans(res);
+        return stats.getCount();
+    }
+
+    /**
+     * Returns the statistics of the region last passed to
+     * {@link #sample(Bitmap, Rect, double[])}, including the channel variances.
+     * The object is reused by the next call.
+     * @return the statistics of the last sampled region
+     */
+    public ColorStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,363 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Streaming Butterworth band-pass filter realised as a cascade of
+ * second-order sections (biquads) in transposed direct form II.
+ * <p>
+ * The coefficients follow the same design path as scipy's
+ * <code>butter(order, [low, high], btype='band')</code>: analog prototype
+ * poles, pre-warped low-pass to band-pass transform and bilinear transform.
+ * Because the result is kept in second-order sections instead of the
+ * (b, a) polynomial form, the output agrees with
+ * <code>lfilter(b, a, x)</code> to within 1e-9 (relative to the peak
+ * amplitude of the trace) for order 4 at fs = 30 Hz and a 0.75 - 4 Hz band,
+ * when both start from zero state.
+ * <p>
+ * The coefficients come from {@link ButterworthDesigner}, so filters with the
+ * same design share one set of sections; {@link #filter(double)} does not
+ * allocate. {@link #filtfilt(double[], double[])} runs the cascade forwards and
+ * backwards like scipy's <code>sosfiltfilt</code> for offline reprocessing.
+ * Instances are not thread safe.
+ */
+public class ButterworthBandpass {
+
+    /** Number of coefficients stored per section: b0, b1, b2, a0, a1, a2. */
+    public static final int SOS_STRIDE = 6;
+
+    private final int order;
+    private final double lowcut;
+    private final double highcut;
+    private final double fs;
+
+    private final double[] sos;
+    private final double[] state;
+    private final int sections;
+
+    private final double[] steadyState;
+    private final double[] passState;
+    private double[] extended = new double[0];
+
+    /**
+     * Looks up (or designs) the filter coefficients and clears the filter state.
+     * @param order the order of the analog low-pass prototype
+     * @param lowcut the lower -3 dB frequency in Hz
+     * @param highcut the upper -3 dB frequency in Hz
+     * @param fs the sampling rate in Hz
+     */
+    public ButterworthBandpass(int order, double lowcut, double highcut, double fs) {
+        this(order, lowcut, highcut, fs, ButterworthDesigner.getSos(order, lowcut, highcut, fs));
+    }
+
+    /**
+     * Wraps already designed second-order sections.
+     * @param order the order of the analog low-pass prototype
+     * @param lowcut the lower -3 dB frequency in Hz
+     * @param highcut the upper -3 dB frequency in Hz
+     * @param fs the sampling rate in Hz
+     * @param sos the sections in scipy layout, {@link #SOS_STRIDE} values per section
+     */
+    ButterworthBandpass(int order, double lowcut, double highcut, double fs, double[] sos) {
+        this.order = order;
+        this.lowcut = lowcut;
+        this.highcut = highcut;
+        this.fs = fs;
+        this.sos = sos;
+        this.sections = sos.length / SOS_STRIDE;
+        this.state = new double[2 * sections];
+        this.steadyState = steadyState(sos, sections);
+        this.passState = new double[2 * sections];
+    }
+
+    /**
+     * Filters one new sample using the state left by the previous call.
+     * @param x the input sample
+     * @return the filtered sample
+     */
+    public double filter(double x) {
+        double y = x;
+        for (int s = 0; s < sections; s++) {
+            int c = s * SOS_STRIDE;
+            int z = 2 * s;
+            double out = sos[c] * y + state[z];
+            state[z] = sos[c + 1] * y - sos[c + 4] * out + state[z + 1];
+            state[z + 1] = sos[c + 2] * y - sos[c + 5] * out;
+            y = out;
+        }
+        return y;
+    }
+
+    /**
+     * Filters a block of samples, continuing from the current state.
+     * <code>input</code> and <code>output</code> may be the same array.
+     * @param input the input samples
+     * @param output the destination, at least as long as <code>input</code>
+     */
+    public void filter(double[] input, double[] output) {
+        for (int i = 0; i < input.length; i++) {
+            output[i] = filter(input[i]);
+        }
+    }
+
+    /**
+     * Filters a block forwards and backwards, which cancels the phase response
+     * and squares the magnitude response. As in scipy's <code>sosfiltfilt</code>
+     * with default arguments, the block is extended at both ends by an odd
+     * reflection of {@link #getPadLength()} samples, and each pass starts from
+     * the steady state of a step at its first sample. The streaming state used
+     * by {@link #filter(double)} is left untouched. <code>input</code> and
+     * <code>output</code> may be the same array.
+     * @param input the input samples, longer than {@link #getPadLength()}
+     * @param output the destination, at least as long as <code>input</code>
+     */
+    public void filtfilt(double[] input, double[] output) {
+        int n = input.length;
+        int pad = getPadLength();
+        if (n <= pad) {
+            throw new IllegalArgumentException(
+                    "input must be longer than the pad length " + pad + ": " + n);
+        }
+        int len = n + 2 * pad;
+        if (extended.length < len) {
+            extended = new double[len];
+        }
+        double[] x = extended;
+        double first = input[0];
+        double last = input[n - 1];
+        for (int i = 0; i < pad; i++) {
+            x[i] = 2.0 * first - input[pad - i];
+            x[pad + n + i] = 2.0 * last - input[n - 2 - i];
+        }
+        System.arraycopy(input, 0, x, pad, n);
+
+        startPass(x[0]);
+        for (int i = 0; i < len; i++) {
+            x[i] = pass(x[i]);
+        }
+        startPass(x[len - 1]);
+        for (int i = len - 1; i >= 0; i--) {
+            x[i] = pass(x[i]);
+        }
+        System.arraycopy(x, pad, output, 0, n);
+    }
+
+    /**
+     * Runs {@link #filtfilt(double[], double[])} over a batch of independent
+     * traces, reusing one workspace.
+     * @param inputs the input traces
+     * @param outputs the destinations, one per input trace
+     */
+    public void filtfilt(double[][] inputs, double[][] outputs) {
+        for (int i = 0; i < inputs.length; i++) {
+            filtfilt(inputs[i], outputs[i]);
+        }
+    }
+
+    /**
+     * Returns the number of samples reflected at each end by
+     * {@link #filtfilt(double[], double[])}, which is also the minimum
+     * input length minus one.
+     * @return 3 * (2 * sections + 1)
+     */
+    public int getPadLength() {
+        return 3 * (2 * sections + 1);
+    }
+
+    private void startPass(double x) {
+        for (int i = 0; i < passState.length; i++) {
+            passState[i] = steadyState[i] * x;
+        }
+    }
+
+    private double pass(double x) {
+        double y = x;
+        for (int s = 0; s < sections; s++) {
+            int c = s * SOS_STRIDE;
+            int z = 2 * s;
+            double out = sos[c] * y + passState[z];
+            passState[z] = sos[c + 1] * y - sos[c + 4] * out + passState[z + 1];
+            passState[z + 1] = sos[c + 2] * y - sos[c + 5] * out;
+            y = out;
+        }
+        return y;
+    }
+
+    /**
+     * Computes the section states reached after a unit step has settled,
+     * like scipy's <code>sosfilt_zi</code>: each section sees the DC gain of
+     * the sections before it as its input level.
+     */
+    private static double[] steadyState(double[] sos, int sections) {
+        double[] zi = new double[2 * sections];
+        double level = 1.0;
+        for (int s = 0; s < sections; s++) {
+            int c = s * SOS_STRIDE;
+            double b0 = sos[c] / sos[c + 3];
+            double b1 = sos[c + 1] / sos[c + 3];
+            double b2 = sos[c + 2] / sos[c + 3];
+            double a1 = sos[c + 4] / sos[c + 3];
+            double a2 = sos[c + 5] / sos[c + 3];
+            double gain = (b0 + b1 + b2) / (1.0 + a1 + a2);
+            zi[2 * s + 1] = level * (b2 - a2 * gain);
+            zi[2 * s] = level * (b1 - a1 * gain) + zi[2 * s + 1];
+            level *= gain;
+        }
+        return zi;
+    }
+
+    /**
+     * Clears the filter state, as if no sample had been seen yet.
+     */
+    public void reset() {
+        for (int i = 0; i < state.length; i++) {
+            state[i] = 0.0;
+        }
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public double getLowcut() {
+        return lowcut;
+    }
+
+    public double getHighcut() {
+        return highcut;
+    }
+
+    public double getSamplingRate() {
+        return fs;
+    }
+
+    /**
+     * Returns a copy of the second-order sections in scipy layout.
+     * @return <code>order</code> rows of b0, b1, b2, a0, a1, a2
+     */
+    public double[] getSos() {
+        return sos.clone();
+    }
+
+    /**
+     * Designs a digital Butterworth band-pass filter as second-order sections.
+     * @param order the order of the analog low-pass prototype
+     * @param lowcut the lower -3 dB frequency in Hz
+     * @param highcut the upper -3 dB frequency in Hz
+     * @param fs the sampling rate in Hz
+     * @return <code>order</code> sections of b0, b1, b2, a0, a1, a2, the overall gain folded
+     * into the first section
+     */
+    public static double[] designSos(int order, double lowcut, double highcut, double fs) {
+        if (order < 1) {
+            throw new IllegalArgumentException("order must be positive: " + order);
+        }
+        double nyq = 0.5 * fs;
+        double low = lowcut / nyq;
+        double high = highcut / nyq;
+        if (!(low > 0.0 && low < high && high < 1.0)) {
+            throw new IllegalArgumentException(
+                    "band must satisfy 0 < lowcut < highcut < fs / 2: " + lowcut + ", " + highcut);
+        }
+
+        // Pre-warp the band edges for the bilinear transform (scipy uses fs = 2 internally).
+        double warpedLow = 4.0 * Math.tan(Math.PI * low / 2.0);
+        double warpedHigh = 4.0 * Math.tan(Math.PI * high / 2.0);
+        double bw = warpedHigh - warpedLow;
+        double wo2 = warpedLow * warpedHigh;
+
+        int poles = 2 * order;
+        double[] pRe = new double[poles];
+        double[] pIm = new double[poles];
+        double gain = Math.pow(bw, order);
+        double denRe = 1.0;
+        double denIm = 0.0;
+
+        for (int i = 0; i < order; i++) {
+            // Analog prototype pole on the unit circle, left half plane.
+            double theta = Math.PI * (2 * i - order + 1) / (2.0 * order);
+            double lpRe = -Math.cos(theta) * bw / 2.0;
+            double lpIm = -Math.sin(theta) * bw / 2.0;
+
+            // Low-pass to band-pass: p = lp +/- sqrt(lp^2 - wo^2).
+            double sqRe = lpRe * lpRe - lpIm * lpIm - wo2;
+            double sqIm = 2.0 * lpRe * lpIm;
+            double mod = Math.sqrt(Maths.hypot(sqRe, sqIm));
+            double arg = Math.atan2(sqIm, sqRe) / 2.0;
+            double rtRe = mod * Math.cos(arg);
+            double rtIm = mod * Math.sin(arg);
+
+            for (int sign = 0; sign < 2; sign++) {
+                double aRe = sign == 0 ? lpRe + rtRe : lpRe - rtRe;
+                double aIm = sign == 0 ? lpIm + rtIm : lpIm - rtIm;
+
+                // Bilinear transform: z = (4 + p) / (4 - p).
+                double nRe = 4.0 + aRe;
+                double dRe = 4.0 - aRe;
+                double dIm = -aIm;
+                double dd = dRe * dRe + dIm * dIm;
+                int k = 2 * i + sign;
+                pRe[k] = (nRe * dRe + aIm * dIm) / dd;
+                pIm[k] = (aIm * dRe - nRe * dIm) / dd;
+
+                double tRe = denRe * dRe - denIm * dIm;
+                denIm = denRe * dIm + denIm * dRe;
+                denRe = tRe;
+            }
+        }
+
+        // The band-pass zeros at s = 0 and s = infinity map to z = 1 and z = -1;
+        // the gain picks up prod(4 - z_analog) / prod(4 - p_analog).
+        double num = Math.pow(4.0, order);
+        gain *= num * denRe / (denRe * denRe + denIm * denIm);
+
+        return pairPoles(pRe, pIm, order, gain);
+    }
+
+    /**
+     * Groups conjugate pole pairs (and leftover real poles) into sections
+     * whose numerator is the zero pair z = 1, z = -1.
+     */
+    private static double[] pairPoles(double[] pRe, double[] pIm, int sections, double gain) {
+        double[] sos = new double[sections * SOS_STRIDE];
+        boolean[] used = new boolean[pRe.length];
+        int s = 0;
+        double pendingReal = Double.NaN;
+
+        for (int i = 0; i < pRe.length; i++) {
+            if (used[i]) {
+                continue;
+            }
+            used[i] = true;
+            double tol = 1e-12 * Math.max(1.0, Math.abs(pRe[i]));
+            if (Math.abs(pIm[i]) > tol) {
+                // Consume the conjugate partner.
+                for (int j = i + 1; j < pRe.length; j++) {
+                    if (!used[j] && Math.abs(pRe[j] - pRe[i]) <= 1e-9
+                            && Math.abs(pIm[j] + pIm[i]) <= 1e-9) {
+                        used[j] = true;
+                        break;
+                    }
+                }
+                setSection(sos, s++, 2.0 * pRe[i], pRe[i] * pRe[i] + pIm[i] * pIm[i]);
+            } else if (Double.isNaN(pendingReal)) {
+                pendingReal = pRe[i];
+            } else {
+                setSection(sos, s++, pendingReal + pRe[i], pendingReal * pRe[i]);
+                pendingReal = Double.NaN;
+            }
+        }
+
+        sos[0] *= gain;
+        sos[2] *= gain;
+        return sos;
+    }
+
+    private static void setSection(double[] sos, int s, double sum, double product) {
+        int c = s * SOS_STRIDE;
+        sos[c] = 1.0;
+        sos[c + 1] = 0.0;
+        sos[c + 2] = -1.0;
+        sos[c + 3] = 1.0;
+        sos[c + 4] = -sum;
+        sos[c + 5] = product;
+    }
+}
@@ -0,0 +1,116 @@
+package com.tzutalin.dlibtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoizing front end of {@link ButterworthBandpass#designSos(int, double, double, double)}.
+ * <p>
+ * Filters are built per window and per estimator, but almost always with the
+ * same (order, lowcut, highcut, fs). The designed second-order sections are
+ * kept in a least-recently-used map, so repeated designs cost one lookup; the
+ * bound keeps multi-rate use (e.g. reprocessing recordings captured at
+ * several frame rates) from growing the cache without limit. The returned
+ * arrays are shared between callers and must not be modified.
+ */
+public final class ButterworthDesigner {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static int sCapacity = DEFAULT_CAPACITY;
+    private static final Map<Key, double[]> CACHE = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest) {
+            return size() > sCapacity;
+        }
+    };
+
+    private ButterworthDesigner() {
+    }
+
+    /**
+     * Returns the second-order sections of a band-pass design, designing them
+     * on the first request.
+     * @param order the order of the analog low-pass prototype
+     * @param lowcut the lower -3 dB frequency in Hz
+     * @param highcut the upper -3 dB frequency in Hz
+     * @param fs the sampling rate in Hz
+     * @return the shared sections in scipy layout; do not modify
+     */
+    public static synchronized double[] getSos(int order, double lowcut, double highcut, double fs) {
+        Key key = new Key(order, lowcut, highcut, fs);
+        double[] sos = CACHE.get(key);
+        if (sos == null) {
+            sos = ButterworthBandpass.designSos(order, lowcut, highcut, fs);
+            CACHE.put(key, sos);
+        }
+        return sos;
+    }
+
+    /**
+     * Bounds the number of cached designs, dropping the least recently used
+     * ones if the cache is already larger.
+     * @param capacity the maximum number of designs, at least 1
+     */
+    public static synchronized void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        sCapacity = capacity;
+        while (CACHE.size() > capacity) {
+            CACHE.remove(CACHE.keySet().iterator().next());
+        }
+    }
+
+    public static synchronized int getCapacity() {
+        return sCapacity;
+    }
+
+    public static synchronized int size() {
+        return CACHE.size();
+    }
+
+    public static synchronized void clear() {
+        CACHE.clear();
+    }
+
+    private static final class Key {
+        private final int order;
+        private final double lowcut;
+        private final double highcut;
+        private final double fs;
+
+        Key(int order, double lowcut, double highcut, double fs) {
+            this.order = order;
+            this.lowcut = lowcut;
+            this.highcut = highcut;
+            this.fs = fs;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return order == other.order
+                    && Double.compare(lowcut, other.lowcut) == 0
+                    && Double.compare(highcut, other.highcut) == 0
+                    && Double.compare(fs, other.fs) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = order;
+            h = 31 * h + hash(lowcut);
+            h = 31 * h + hash(highcut);
+            h = 31 * h + hash(fs);
+            return h;
+        }
+
+        private static int hash(double value) {
+            long bits = Double.doubleToLongBits(value);
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Running sums and sums of squares of red, green, blue and hue over a set of
+ * pixels, kept in primitive longs so accumulating a pixel allocates nothing.
+ * <p>
+ * Channels are indexed by {@link #RED}, {@link #GREEN}, {@link #BLUE} and
+ * {@link #HUE}; colours are 0 - 255 and hue is in degrees, computed with
+ * {@link Hue}. Sums are exact, so means and variances do not depend on the
+ * order in which pixels were added.
+ */
+public class ColorStats {
+
+    public static final int RED = 0;
+    public static final int GREEN = 1;
+    public static final int BLUE = 2;
+    public static final int HUE = 3;
+    /** Number of channels. */
+    public static final int CHANNELS = 4;
+
+    private final long[] sums = new long[CHANNELS];
+    private final long[] sumSquares = new long[CHANNELS];
+    private int count;
+
+    /**
+     * Forgets all pixels.
+     */
+    public void clear() {
+        for (int c = 0; c < CHANNELS; c++) {
+            sums[c] = 0;
+            sumSquares[c] = 0;
+        }
+        count = 0;
+    }
+
+    /**
+     * Adds one pixel.
+     * @param argb the colour as 0xAARRGGBB; alpha is ignored
+     */
+    public void add(int argb) {
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        int h = Hue.fromRgb(r, g, b);
+        sums[RED] += r;
+        sums[GREEN] += g;
+        sums[BLUE] += b;
+        sums[HUE] += h;
+        sumSquares[RED] += r * r;
+        sumSquares[GREEN] += g * g;
+        sumSquares[BLUE] += b * b;
+        sumSquares[HUE] += (long) h * h;
+        count++;
+    }
+
+    /**
+     * Adds a block of pixels, as returned by <code>Bitmap.getPixels</code>.
+     * @param argb the colours as 0xAARRGGBB
+     * @param offset the index of the first pixel
+     * @param stride the distance between rows in <code>argb</code>
+     * @param width the number of pixels per row
+     * @param height the number of rows
+     */
+    public void add(int[] argb, int offset, int stride, int width, int height) {
+        for (int row = 0; row < height; row++) {
+            int start = offset + row * stride;
+            for (int i = start; i < start + width; i++) {
+                add(argb[i]);
+            }
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of a channel.
+     * @param channel one of {@link #RED}, {@link #GREEN}, {@link #BLUE}, {@link #HUE}
+     * @return the mean, or NaN if no pixel was added
+     */
+    public double getMean(int channel) {
+        return unscale(channel, (double) sums[channel] / count);
+    }
+
+    /**
+     * Returns the population variance of a channel.
+     * @param channel one of {@link #RED}, {@link #GREEN}, {@link #BLUE}, {@link #HUE}
+     * @return the variance, or NaN if no pixel was added
+     */
+    public double getVariance(int channel) {
+        double mean = (double) sums[channel] / count;
+        double variance = Math.max(0.0, (double) sumSquares[channel] / count - mean * mean);
+        return unscale(channel, unscale(channel, variance));
+    }
+
+    /**
+     * Writes the means of all channels.
+     * @param res the destination, at least {@link #CHANNELS} long
+     * @return res
+     */
+    public double[] getMeans(double[] res) {
+        for (int c = 0; c < CHANNELS; c++) {
+            res[c] = getMean(c);
+        }
+        return res;
+    }
+
+    private static double unscale(int channel, double value) {
+        return channel == HUE ? value / Hue.SCALE : value;
+    }
+}
@@ -0,0 +1,388 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Dense matrix stored row-major in a single double[] with a row stride.
+ * <p>
+ * The {@link Matrix} helpers work on double[][] and return new arrays on every
+ * call. The kernels here write into a caller-provided destination instead, and
+ * {@link #scale(DenseMatrix, double, DenseMatrix)} and
+ * {@link #copy(DenseMatrix, DenseMatrix)} also work in place. Element (i, j)
+ * lives at <code>data[i * stride + j]</code>; the stride may exceed the column
+ * count so that rows can be padded or a matrix can view the leading columns of
+ * a wider one.
+ * <p>
+ * {@link #mult(DenseMatrix, DenseMatrix, DenseMatrix)} walks both operands
+ * row-wise in i-k-j order and computes the output in square tiles, walking k
+ * in tiles as well, so that a block of the second operand stays in cache while
+ * it is reused for the rows of the tile.
+ * Unless stated otherwise, the destination must not share storage with an
+ * operand.
+ */
+public final class DenseMatrix {
+
+    // Tile edge of the blocked kernels, in elements: 64 * 64 doubles is 32 KiB.
+    private static final int BLOCK = 64;
+
+    private final int rows;
+    private final int cols;
+    private final int stride;
+    private final double[] data;
+
+    /**
+     * Creates a zero matrix with a packed row stride.
+     * @param rows the number of rows
+     * @param cols the number of columns
+     */
+    public DenseMatrix(int rows, int cols) {
+        this(rows, cols, cols);
+    }
+
+    /**
+     * Creates a zero matrix with the given row stride.
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param stride the distance between the starts of two rows, at least <code>cols</code>
+     */
+    public DenseMatrix(int rows, int cols, int stride) {
+        this(rows, cols, stride, new double[rows == 0 ? 0 : (rows - 1) * stride + cols]);
+    }
+
+    /**
+     * Wraps existing storage without copying.
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param stride the distance between the starts of two rows, at least <code>cols</code>
+     * @param data the backing array
+     */
+    public DenseMatrix(int rows, int cols, int stride, double[] data) {
+        if (rows < 0 || cols < 0 || stride < cols
+                || (rows > 0 && data.length < (rows - 1) * stride + cols)) {
+            throw new IllegalArgumentException(
+                    rows + "x" + cols + ", stride " + stride + ", length " + data.length);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = stride;
+        this.data = data;
+    }
+
+    /**
+     * Copies a double[][] matrix into a new packed dense matrix.
+     * @param mat the matrix
+     * @return the dense copy
+     */
+    public static DenseMatrix from(double[][] mat) {
+        int m = Matrix.getNumOfRows(mat);
+        int n = m == 0 ? 0 : Matrix.getNumOfColumns(mat);
+        DenseMatrix res = new DenseMatrix(m, n);
+        res.set(mat);
+        return (res);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Returns the backing array; element (i, j) is at <code>i * getStride() + j</code>.
+     * @return the storage, not a copy
+     */
+    public double[] getData() {
+        return data;
+    }
+
+    public double get(int i, int j) {
+        return data[i * stride + j];
+    }
+
+    public void set(int i, int j, double value) {
+        data[i * stride + j] = value;
+    }
+
+    /**
+     * Copies a double[][] matrix of the same size into this one.
+     * @param mat the source
+     */
+    public void set(double[][] mat) {
+        for (int i = 0; i < rows; ++i) {
+            System.arraycopy(mat[i], 0, data, i * stride, cols);
+        }
+    }
+
+    /**
+     * Copies this matrix into a double[][] matrix of the same size.
+     * @param res the destination
+     * @return <code>res</code>
+     */
+    public double[][] toArray(double[][] res) {
+        for (int i = 0; i < rows; ++i) {
+            System.arraycopy(data, i * stride, res[i], 0, cols);
+        }
+        return (res);
+    }
+
+    /**
+     * Copies this matrix into a new double[][] matrix.
+     * @return the copy
+     */
+    public double[][] toArray() {
+        return toArray(Matrix.newMatrix(rows, cols));
+    }
+
+    /**
+     * Sets every element to a value.
+     * @param value the value
+     */
+    public void fill(double value) {
+        for (int i = 0; i < rows; ++i) {
+            int row = i * stride;
+            for (int j = 0; j < cols; ++j) {
+                data[row + j] = value;
+            }
+        }
+    }
+
+    /**
+     * Turns this square matrix into the identity.
+     */
+    public void setIdentity() {
+        fill(0.0);
+        for (int i = 0; i < rows; ++i) {
+            data[i * stride + i] = 1.0;
+        }
+    }
+
+    /**
+     * Copies a matrix of the same size; <code>res</code> may be <code>mat</code>.
+     * @param mat the source
+     * @param res the destination
+     * @return <code>res</code>
+     */
+    public static DenseMatrix copy(DenseMatrix mat, DenseMatrix res) {
+        checkSize(res, mat.rows, mat.cols);
+        if (res != mat) {
+            for (int i = 0; i < mat.rows; ++i) {
+                System.arraycopy(mat.data, i * mat.stride, res.data, i * res.stride, mat.cols);
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Calculates fac * mat; <code>res</code> may be <code>mat</code>.
+     * @param mat the matrix
+     * @param fac the factor
+     * @param res the destination
+     * @return <code>res</code>
+     */
+    public static DenseMatrix scale(DenseMatrix mat, double fac, DenseMatrix res) {
+        checkSize(res, mat.rows, mat.cols);
+        for (int i = 0; i < mat.rows; ++i) {
+            int src = i * mat.stride;
+            int dst = i * res.stride;
+            for (int j = 0; j < mat.cols; ++j) {
+                res.data[dst + j] = fac * mat.data[src + j];
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Transposes a matrix in tiles so that neither side is walked column-wise
+     * for long.
+     * @param mat the m*n matrix
+     * @param res the n*m destination
+     * @return <code>res</code>
+     */
+    public static DenseMatrix transpose(DenseMatrix mat, DenseMatrix res) {
+        checkSize(res, mat.cols, mat.rows);
+        double[] a = mat.data;
+        double[] r = res.data;
+        for (int i0 = 0; i0 < mat.rows; i0 += BLOCK) {
+            int i1 = Math.min(i0 + BLOCK, mat.rows);
+            for (int j0 = 0; j0 < mat.cols; j0 += BLOCK) {
+                int j1 = Math.min(j0 + BLOCK, mat.cols);
+                for (int i = i0; i < i1; ++i) {
+                    int src = i * mat.stride;
+                    for (int j = j0; j < j1; ++j) {
+                        r[j * res.stride + i] = a[src + j];
+                    }
+                }
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Multiplicates two matrices with a cache-blocked kernel.
+     * @param mat1 the m*n matrix
+     * @param mat2 the n*o matrix
+     * @param res the m*o destination
+     * @return <code>res</code>
+     */
+    public static DenseMatrix mult(DenseMatrix mat1, DenseMatrix mat2, DenseMatrix res) {
+        checkProduct(mat1, mat2, res);
+        int colTiles = tiles(mat2.cols);
+        for (int t = 0, count = tiles(mat1.rows) * colTiles; t < count; ++t) {
+            multTile(mat1, mat2, res, t / colTiles, t % colTiles);
+        }
+        return (res);
+    }
+
+    /**
+     * Multiplicates two matrices, spreading the output tiles over the threads
+     * of a {@link ParallelLoop}. Every element is computed exactly as in
+     * {@link #mult(DenseMatrix, DenseMatrix, DenseMatrix)}, so the result does
+     * not depend on the number of threads.
+     * @param mat1 the m*n matrix
+     * @param mat2 the n*o matrix
+     * @param res the m*o destination
+     * @param loop the threads to use
+     * @return <code>res</code>
+     */
+    public static DenseMatrix mult(final DenseMatrix mat1, final DenseMatrix mat2,
+                                   final DenseMatrix res, ParallelLoop loop) {
+        checkProduct(mat1, mat2, res);
+        final int colTiles = tiles(mat2.cols);
+        loop.run(tiles(mat1.rows) * colTiles, new ParallelLoop.Body() {
+            @Override
+            public void run(int index) {
+                multTile(mat1, mat2, res, index / colTiles, index % colTiles);
+            }
+        });
+        return (res);
+    }
+
+    /**
+     * Computes one BLOCK x BLOCK tile of the product, walking k in tiles too.
+     */
+    private static void multTile(DenseMatrix mat1, DenseMatrix mat2, DenseMatrix res,
+                                 int rowTile, int colTile) {
+        int n = mat1.cols;
+        int i0 = rowTile * BLOCK;
+        int i1 = Math.min(i0 + BLOCK, mat1.rows);
+        int j0 = colTile * BLOCK;
+        int j1 = Math.min(j0 + BLOCK, mat2.cols);
+        double[] a = mat1.data;
+        double[] b = mat2.data;
+        double[] r = res.data;
+        for (int i = i0; i < i1; ++i) {
+            int rowR = i * res.stride;
+            for (int j = j0; j < j1; ++j) {
+                r[rowR + j] = 0.0;
+            }
+        }
+        for (int k0 = 0; k0 < n; k0 += BLOCK) {
+            int k1 = Math.min(k0 + BLOCK, n);
+            for (int i = i0; i < i1; ++i) {
+                int rowA = i * mat1.stride;
+                int rowR = i * res.stride;
+                for (int k = k0; k < k1; ++k) {
+                    double aik = a[rowA + k];
+                    if (aik == 0.0) {
+                        continue;
+                    }
+                    int rowB = k * mat2.stride;
+                    for (int j = j0; j < j1; ++j) {
+                        r[rowR + j] += aik * b[rowB + j];
+                    }
+                }
+            }
+        }
+    }
+
+    private static int tiles(int length) {
+        return (length + BLOCK - 1) / BLOCK;
+    }
+
+    private static void checkProduct(DenseMatrix mat1, DenseMatrix mat2, DenseMatrix res) {
+        if (mat2.rows != mat1.cols) {
+            throw new IllegalArgumentException(
+                    mat1.rows + "x" + mat1.cols + " times " + mat2.rows + "x" + mat2.cols);
+        }
+        checkSize(res, mat1.rows, mat2.cols);
+    }
+
+    /**
+     * Calculates mat1 * mat2' from row dot products, without forming the transpose.
+     * @param mat1 the m*n matrix
+     * @param mat2 the o*n matrix
+     * @param res the m*o destination
+     * @return <code>res</code>
+     */
+    public static DenseMatrix multTransposed(DenseMatrix mat1, DenseMatrix mat2, DenseMatrix res) {
+        int m = mat1.rows;
+        int n = mat1.cols;
+        int o = mat2.rows;
+        if (mat2.cols != n) {
+            throw new IllegalArgumentException(
+                    m + "x" + n + " times transposed " + o + "x" + mat2.cols);
+        }
+        checkSize(res, m, o);
+        for (int i = 0; i < m; ++i) {
+            int rowA = i * mat1.stride;
+            for (int j = 0; j < o; ++j) {
+                res.data[i * res.stride + j] = dot(mat1.data, rowA, mat2.data, j * mat2.stride, n);
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Calculates the Gram matrix mat * mat'; only the lower triangle is
+     * computed and then mirrored.
+     * @param mat the m*n matrix
+     * @param res the m*m destination
+     * @return <code>res</code>
+     */
+    public static DenseMatrix gram(DenseMatrix mat, DenseMatrix res) {
+        int m = mat.rows;
+        int n = mat.cols;
+        checkSize(res, m, m);
+        for (int i = 0; i < m; ++i) {
+            int rowI = i * mat.stride;
+            for (int j = 0; j <= i; ++j) {
+                double sum = dot(mat.data, rowI, mat.data, j * mat.stride, n);
+                res.data[i * res.stride + j] = sum;
+                res.data[j * res.stride + i] = sum;
+            }
+        }
+        return (res);
+    }
+
+    @Override
+    public String toString() {
+        return Matrix.toString(toArray());
+    }
+
+    private static double dot(double[] a, int offA, double[] b, int offB, int n) {
+        // four partial sums keep independent add chains in flight
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        int k = 0;
+        for (; k + 3 < n; k += 4) {
+            s0 += a[offA + k] * b[offB + k];
+            s1 += a[offA + k + 1] * b[offB + k + 1];
+            s2 += a[offA + k + 2] * b[offB + k + 2];
+            s3 += a[offA + k + 3] * b[offB + k + 3];
+        }
+        for (; k < n; ++k) {
+            s0 += a[offA + k] * b[offB + k];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static void checkSize(DenseMatrix mat, int rows, int cols) {
+        if (mat.rows != rows || mat.cols != cols) {
+            throw new IllegalArgumentException(
+                    "expected " + rows + "x" + cols + ", got " + mat.rows + "x" + mat.cols);
+        }
+    }
+}
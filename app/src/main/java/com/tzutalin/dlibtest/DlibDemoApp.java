@@ -32,6 +32,11 @@ public class DlibDemoApp extends Application {
         } else {
             Timber.plant(new ReleaseTree());
         }
+
+        // Boot the interpreter off the main thread, ahead of the first heart-rate window.
+        if (PulseRateEstimators.DEFAULT_BACKEND == PulseRateEstimators.Backend.NPSCIPY) {
+            PyMathBridge.startAsync(this);
+        }
     }
 
     /**
@@ -875,13 +875,6 @@ public class EigenValueDecompositionSymm implements java.io.Serializable {
                     V[i][j] = A[i][j];
                 }
             }
-
-            // Tridiagonalize.
-            tred2();
-
-            // Diagonalize.
-            tql2();
-
         } else {
             H = new double[n][n];
             ort = new double[n];
@@ -891,16 +884,63 @@ public class EigenValueDecompositionSymm implements java.io.Serializable {
                     H[i][j] = A[i][j];
                 }
             }
+        }
+
+        factor();
+    }
+
+    /** Check for symmetry, then construct the eigenvalue decomposition of a
+     * square matrix of any size, reading the flat storage row by row.
+     * @param A Square matrix
+     */
+    public EigenValueDecompositionSymm(DenseMatrix A) {
+
+        n = A.getRows();
+        if (A.getCols() != n) {
+            throw new IllegalArgumentException("matrix is not square");
+        }
+        double[] a = A.getData();
+        int stride = A.getStride();
+
+        V = new double[n][n];
+        d = new double[n];
+        e = new double[n];
+        issymmetric = true;
+        for (int i = 0; (i < n) & issymmetric; i++) {
+            for (int j = 0; (j < i) & issymmetric; j++) {
+                issymmetric = (a[i * stride + j] == a[j * stride + i]);
+            }
+        }
+
+        double[][] target;
+        if (issymmetric) {
+            target = V;
+        } else {
+            H = new double[n][n];
+            ort = new double[n];
+            target = H;
+        }
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a, i * stride, target[i], 0, n);
+        }
+
+        factor();
+    }
 
+    private void factor() {
+        if (issymmetric) {
+            // Tridiagonalize.
+            tred2();
+
+            // Diagonalize.
+            tql2();
+        } else {
             // Reduce to Hessenberg form.
             orthes();
 
             // Reduce Hessenberg to real Schur form.
             hqr2();
         }
-
-
-
     }
 
 /* ------------------------
@@ -1,163 +1,838 @@
 package com.tzutalin.dlibtest;
 
+import java.util.Random;
+
 /**
  *
  * @author Tom Pepels
  * modfidy little bit by Yi Zhuo for used on RGB purpose
+ * <p>
+ * Each instance owns its intermediate matrices, sized once for a fixed number
+ * of channels and samples, so {@link #fit(double[][])} and
+ * {@link #transform(double[][], double[][])} can be called repeatedly on new
+ * windows without allocating, and independent instances can run on different
+ * threads. A single instance is not thread safe.
  */
 public class FastIca {
 
-    private static double[] meanValues;
-    private static double[] eigenValues;
-    private static double[][] vectorsZeroMean;
-    private static double[][] covarianceMatrix;
-    private static double[][] E;
-    private static double[][] resVectors;
-    private static double[][] whiteningMatrix;
-    private static double[][] dewhiteningMatrix;
-    private static double[][] whitenedVectors;
-    private static double[][] B;
-    //private static int iterationLimit = 10;
+    public static final int DEFAULT_MAX_ITERATIONS = 200;
+    public static final double DEFAULT_EPSILON = 1e-4;
+
+    /**
+     * How the rows of the unmixing matrix are made orthonormal after each update.
+     */
+    public enum Decorrelation {
+        /** (B * B')^(-1/2) * B through an eigendecomposition of B * B'. */
+        EIGEN,
+        /**
+         * The iterative scheme B = 3/2 B - 1/2 B * B' * B on the normalised
+         * matrix (Newton-Schulz for the polar factor), which needs only matrix
+         * products and converges quadratically once B * B' is near the identity.
+         */
+        NEWTON_SCHULZ
+    }
+
+    /**
+     * The arithmetic of the per-sample fixed-point update. The whitening, the
+     * decorrelation and the unmixing matrices always stay in double.
+     */
+    public enum Precision {
+        DOUBLE,
+        /** Whitened samples are rounded to float and the update runs on {@link FloatKernels}. */
+        FLOAT
+    }
+
+    /**
+     * Problems of at least this many channels^2 * samples run the per-sample
+     * work in parallel once {@link #setParallel(ParallelLoop)} was called.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+    // Samples per parallel chunk. The chunking depends on the problem size
+    // only, so partial sums and their ordered reduction do not depend on the
+    // number of threads.
+    private static final int CHUNK_SAMPLES = 256;
+
+    // Newton-Schulz stops once every element of B * B' is this close to the identity.
+    private static final double ORTHONORMAL_TOLERANCE = 1e-12;
+    private static final int MAX_DECORRELATION_STEPS = 100;
+
+    private final int channels;
+    private final int samples;
+    private final Random random;
+
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private double epsilon = DEFAULT_EPSILON;
+    private Decorrelation decorrelation = Decorrelation.EIGEN;
+    private Precision precision = Precision.DOUBLE;
+    private int iterations;
+    private boolean converged;
+    private boolean warmStart;
+    private boolean warmStarted;
+    // true while separatingMatrix holds a converged solution to start the next fit from
+    private boolean hasSolution;
+
+    private final double[] meanValues;
+    private final double[] eigenValues;
+    private final DenseMatrix inputData;
+    private final DenseMatrix vectorsZeroMean;
+    private final DenseMatrix covariance;
+    private final double[][] covarianceMatrix;
+    private final double[][] E;
+    private final double[][] whiteningMatrix;
+    private final double[][] dewhiteningMatrix;
+    // whitened signals, transposed: the m values of sample j start at j * m
+    private final DenseMatrix whitenedSamples;
+    // whitening matrix times the mean, subtracted while projecting
+    private final double[] whitenedMean;
+    private final double[][] B;
+    private final double[][] oldB;
+    private final double[][] initialB;
+    private final double[][] separatingMatrix;
+    private final DenseMatrix separating;
+
+    // update and decorrelation workspaces
+    private final double[] projections;
+    private final double[][] gram;
+    private final double[] powerValues;
+    private final double[][] powerVectors;
+    private final double[][] powerResult;
+    private final double[][] decorrelated;
+    // general eigen solver for more than three channels, null otherwise
+    private final SymmetricEigenSolver eigenSolver;
+    private final double[] eigenWork;
+    // float copies for Precision.FLOAT, allocated when that mode is first chosen
+    private float[] whitenedFloat;
+    private float[] unmixingFloat;
+    private float[] projectionsFloat;
+    private float[] sumsFloat;
+
+    // the expectation sums of the serial path, row-major
+    private final double[] sums;
+    // parallel mode: one row-major channels x channels partial and one
+    // projection workspace per chunk, null below the threshold
+    private ParallelLoop parallel;
+    private int chunks;
+    private double[][] partials;
+    private double[][] chunkProjections;
+    private double[][] currentB;
+    private DenseMatrix currentInput;
+    private ParallelLoop.Body expectationBody;
+    private ParallelLoop.Body covarianceBody;
+    private ParallelLoop.Body projectionBody;
+
+    /**
+     * Creates a solver for <code>channels</code> mixed signals of <code>samples</code> values each.
+     * @param channels the number of input signals, which is also the number of components
+     * @param samples the number of values per signal
+     */
+    public FastIca(int channels, int samples) {
+        this(channels, samples, new Random());
+    }
+
+    /**
+     * Creates a solver whose random initial unmixing matrix is reproducible.
+     * @param channels the number of input signals, which is also the number of components
+     * @param samples the number of values per signal
+     * @param seed the seed of the initial unmixing matrix
+     */
+    public FastIca(int channels, int samples, long seed) {
+        this(channels, samples, new Random(seed));
+    }
+
+    private FastIca(int channels, int samples, Random random) {
+        if (channels < 1 || samples < 2) {
+            throw new IllegalArgumentException("channels " + channels + ", samples " + samples);
+        }
+        this.channels = channels;
+        this.samples = samples;
+        this.random = random;
+
+        meanValues = new double[channels];
+        eigenValues = new double[channels];
+        inputData = new DenseMatrix(channels, samples);
+        vectorsZeroMean = new DenseMatrix(channels, samples);
+        covariance = new DenseMatrix(channels, channels);
+        covarianceMatrix = new double[channels][channels];
+        E = new double[channels][channels];
+        whiteningMatrix = new double[channels][channels];
+        dewhiteningMatrix = new double[channels][channels];
+        whitenedSamples = new DenseMatrix(samples, channels);
+        whitenedMean = new double[channels];
+        B = new double[channels][channels];
+        oldB = new double[channels][channels];
+        initialB = new double[channels][channels];
+        separatingMatrix = new double[channels][channels];
+        separating = new DenseMatrix(channels, channels);
+
+        projections = new double[channels];
+        sums = new double[channels * channels];
+        gram = new double[channels][channels];
+        powerValues = new double[channels];
+        powerVectors = new double[channels][channels];
+        powerResult = new double[channels][channels];
+        decorrelated = new double[channels][channels];
+        if (SmallSymmetricEigen.supports(channels)) {
+            eigenSolver = null;
+            eigenWork = null;
+        } else {
+            eigenSolver = new SymmetricEigenSolver(channels);
+            // covariance and Gram matrices are mirrored from one triangle
+            eigenSolver.setCheckSymmetry(false);
+            eigenWork = new double[channels * channels];
+        }
+    }
 
     /**
      * Finds a certain number of independent components of the input signal using FastICA
      * @param input the input signals
      * @param maxIterations maximum number of iterations
      * @param epsilon level of accuracy
-     * @param noComponents the number of components this method should return
+     * @param noComponents the number of components this method should return; values below
+     *                     the number of input signals are raised to it
      * @return the independent components of the signal
      */
     public static double[][] fastICA(double[][] input, int maxIterations, double epsilon, int noComponents) {
-        whitening(input);
-        int m = Matrix.getNumOfRows(whitenedVectors);
+        int m = Matrix.getNumOfRows(input);
+        if (noComponents > m) {
+            throw new IllegalArgumentException(
+                    "cannot extract " + noComponents + " components from " + m + " signals");
+        }
+        FastIca ica = new FastIca(m, Matrix.getNumOfColumns(input));
+        ica.setMaxIterations(maxIterations);
+        ica.setEpsilon(epsilon);
+        ica.fit(input);
+        double[][] output = Matrix.newMatrix(m, Matrix.getNumOfColumns(input));
+        ica.transform(input, output);
+        return output;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Chooses the symmetric decorrelation of the unmixing matrix; both modes
+     * reach the same matrix up to rounding.
+     * @param decorrelation the decorrelation mode, {@link Decorrelation#EIGEN} by default
+     */
+    public void setDecorrelation(Decorrelation decorrelation) {
+        this.decorrelation = decorrelation;
+    }
 
-        int n = Matrix.getNumOfColumns(whitenedVectors);
-        if (m > noComponents) {
-            noComponents = m;
+    public Decorrelation getDecorrelation() {
+        return decorrelation;
+    }
+
+    /**
+     * Chooses the arithmetic of the fixed-point update; takes effect at the next fit.
+     * @param precision the precision, {@link Precision#DOUBLE} by default
+     */
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+        if (precision == Precision.FLOAT && whitenedFloat == null) {
+            whitenedFloat = new float[samples * channels];
+            unmixingFloat = new float[channels * channels];
+            projectionsFloat = new float[channels];
+            sumsFloat = new float[channels * channels];
         }
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
 
-        B = Matrix.random(noComponents, m);
+    /**
+     * Runs the covariance, the whitening projection, the double precision
+     * fixed-point expectation and {@link #transform(DenseMatrix, DenseMatrix)}
+     * on several threads, if the problem has at least
+     * {@link #PARALLEL_THRESHOLD} channels^2 * samples; smaller problems stay
+     * serial, as the hand-off would cost more than it saves. Parallel fits are
+     * deterministic whatever the thread count but may differ from serial fits
+     * in the last bits, since sums are split at fixed chunk boundaries.
+     * @param loop the threads to use, or null to run serially
+     */
+    public void setParallel(ParallelLoop loop) {
+        if (loop == null || (long) channels * channels * samples < PARALLEL_THRESHOLD) {
+            parallel = null;
+            return;
+        }
+        parallel = loop;
+        if (partials == null) {
+            chunks = (samples + CHUNK_SAMPLES - 1) / CHUNK_SAMPLES;
+            partials = new double[chunks][channels * channels];
+            chunkProjections = new double[chunks][channels];
+            expectationBody = new ParallelLoop.Body() {
+                @Override
+                public void run(int index) {
+                    accumulateExpectation(currentB, chunkStart(index), chunkStart(index + 1),
+                            partials[index], chunkProjections[index]);
+                }
+            };
+            covarianceBody = new ParallelLoop.Body() {
+                @Override
+                public void run(int index) {
+                    accumulateGram(chunkStart(index), chunkStart(index + 1), partials[index]);
+                }
+            };
+            projectionBody = new ParallelLoop.Body() {
+                @Override
+                public void run(int index) {
+                    projectRange(currentInput, chunkStart(index), chunkStart(index + 1));
+                }
+            };
+        }
+    }
 
-        B = Matrix.mult(
-                powerSymmMatrix(Matrix.square(B), -0.5),
-                B);
+    /**
+     * Tells whether fits of this solver run in parallel.
+     * @return true, if a loop was set and the problem is above the threshold
+     */
+    public boolean isParallel() {
+        return parallel != null;
+    }
 
+    public int getChannels() {
+        return channels;
+    }
 
-        for (int k = 1; k < maxIterations; k++) {               // Steps 2 - 4
-            double[][] oldB = Matrix.clone(B);
+    public int getSamples() {
+        return samples;
+    }
 
-            for (int c = 0; c < noComponents; c++) {
-                //Step 1
-                double[] prevW = Matrix.getVecOfRow(oldB, c);
+    /**
+     * Returns the number of fixed-point iterations the last fit ran.
+     * @return the iteration count
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Tells whether the last fit reached the accuracy before the iteration limit.
+     * @return true, if the unmixing matrix converged
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * Makes each fit start from the separating matrix of the previous converged
+     * fit instead of a random matrix. For overlapping windows this usually
+     * converges within one or two iterations and keeps the order and sign of
+     * the components from one window to the next. A fit that does not converge
+     * drops the previous solution, so the next one starts cold again.
+     * @param warmStart true, to reuse the previous solution
+     */
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+        if (!warmStart) {
+            hasSolution = false;
+        }
+    }
+
+    public boolean isWarmStart() {
+        return warmStart;
+    }
 
-                double[] firstPart = new double[m];
+    /**
+     * Tells whether the last fit started from the previous solution.
+     * @return true, if the last fit was warm-started
+     */
+    public boolean wasWarmStarted() {
+        return warmStarted;
+    }
 
-                for (int j = 0; j < n; j++) {
+    /**
+     * Forgets the previous solution; the next fit starts from a random matrix.
+     */
+    public void resetWarmStart() {
+        hasSolution = false;
+    }
 
-                    //First part of the equation
-                    double one = Vector.dot(prevW, Matrix.getVecOfCol(whitenedVectors, j));
-                    one = Math.pow(one, 3);
-                    double[] two = Vector.scale(one, Matrix.getVecOfCol(whitenedVectors, j));
+    /**
+     * Returns the unmixing matrix of the whitened signals; owned by the solver.
+     * @return B
+     */
+    public double[][] getUnmixingMatrix() {
+        return B;
+    }
 
-                    firstPart = Vector.add(firstPart, two);
+    /**
+     * Returns the matrix that maps input signals to components; owned by the solver.
+     * @return B * whitening matrix
+     */
+    public double[][] getSeparatingMatrix() {
+        return separatingMatrix;
+    }
 
+    public double[][] getWhiteningMatrix() {
+        return whiteningMatrix;
+    }
 
-                }
+    public double[][] getDewhiteningMatrix() {
+        return dewhiteningMatrix;
+    }
 
-                firstPart = Vector.scale((1.0 / (double) n), firstPart);
+    /**
+     * Estimates the separating matrix of a set of signals.
+     * @param input <code>channels</code> rows of <code>samples</code> values
+     * @return true, if the iteration converged
+     */
+    public boolean fit(double[][] input) {
+        inputData.set(input);
+        return fit(inputData);
+    }
 
-                //Second part of the equation
-                double[] secondPart = Vector.scale(-3, prevW);
+    /**
+     * Estimates the separating matrix of a set of signals.
+     * @param input <code>channels</code> x <code>samples</code> signal values
+     * @return true, if the iteration converged
+     */
+    public boolean fit(DenseMatrix input) {
+        whitening(input);
+        return solve();
+    }
 
-                double[] w = Vector.add(firstPart, secondPart);
+    /**
+     * Estimates the separating matrix of a set of signals whose mean and
+     * covariance are already known, e.g. from a {@link SlidingCovariance} over
+     * the same window. This skips centering the signals and forming the
+     * covariance; the signals are only read once to project them.
+     * @param input <code>channels</code> rows of <code>samples</code> values
+     * @param mean the mean of every row
+     * @param covariance the covariance of the rows, normalised by <code>samples</code>
+     * @return true, if the iteration converged
+     */
+    public boolean fit(double[][] input, double[] mean, double[][] covariance) {
+        inputData.set(input);
+        return fit(inputData, mean, covariance);
+    }
 
-                //
-                // End of step 2
+    /**
+     * Estimates the separating matrix of a set of signals whose mean and
+     * covariance are already known.
+     * @param input <code>channels</code> x <code>samples</code> signal values
+     * @param mean the mean of every row
+     * @param covariance the covariance of the rows, normalised by <code>samples</code>
+     * @return true, if the iteration converged
+     */
+    public boolean fit(DenseMatrix input, double[] mean, double[][] covariance) {
+        System.arraycopy(mean, 0, meanValues, 0, channels);
+        Matrix.copy(covariance, covarianceMatrix);
+        whiteningBasis();
+        project(input);
+        return solve();
+    }
 
-                // write new vector to the matrix
+    private boolean solve() {
+        int m = channels;
+
+        warmStarted = warmStart && hasSolution;
+        if (warmStarted) {
+            // The previous solution maps centered input to components; expressed
+            // in the new whitened basis it is S * dewhitening, which also absorbs
+            // sign flips and reordering of the new eigenvectors.
+            Matrix.mult(separatingMatrix, dewhiteningMatrix, B);
+        } else {
+            for (int i = 0; i < m; ++i) {
                 for (int j = 0; j < m; ++j) {
-                    B[c][j] = w[j];
-
+                    B[i][j] = random.nextDouble();
                 }
-
             }
+        }
+        decorrelate();
+        Matrix.copy(B, initialB);
+
+        converged = false;
+        iterations = 0;
+        for (int k = 1; k < maxIterations; k++) {               // Steps 2 - 4
+            iterations = k;
+            Matrix.copy(B, oldB);
+
+            // Steps 1 - 2 for every component in one pass over the data
+            fixedPointUpdate(oldB, B);
 
             // symmetric decorrelation by orthonormalisation
-            B = Matrix.mult(
-                    powerSymmMatrix(Matrix.square(B), -0.5),
-                    B);
+            decorrelate();
 
             double matrixDelta = deltaMatrices(B, oldB);
             //System.out.println("Matrix delta: " + matrixDelta);
 
             if (matrixDelta < epsilon) {
                 //System.out.println("Converged after " + k + " iterations.");
+                converged = true;
                 break;
             }
         }
 
-        double[][] sepMatrix = Matrix.mult(B, whiteningMatrix);
-
-        return Matrix.mult(sepMatrix, input);
+        alignSigns(B, initialB);
+        Matrix.mult(B, whiteningMatrix, separatingMatrix);
+        separating.set(separatingMatrix);
+        hasSolution = converged;
+        return converged;
     }
 
+    /**
+     * Applies the separating matrix of the last fit.
+     * @param input <code>channels</code> rows of signal values
+     * @param output receives <code>channels</code> rows of component values, as long as the input rows
+     */
+    public void transform(double[][] input, double[][] output) {
+        Matrix.mult(separatingMatrix, input, output);
+    }
 
+    /**
+     * Applies the separating matrix of the last fit.
+     * @param input <code>channels</code> rows of signal values
+     * @param output receives <code>channels</code> rows of component values, as long as the input rows
+     */
+    public void transform(DenseMatrix input, DenseMatrix output) {
+        if (parallel != null) {
+            DenseMatrix.mult(separating, input, output, parallel);
+        } else {
+            DenseMatrix.mult(separating, input, output);
+        }
+    }
 
-    public static void whitening(double[][] input) {
+    private void whitening(DenseMatrix input) {
+        int m = channels;
+        int n = samples;
         // Centering, substract the mean from the signal vectors
-        meanValues = calcMeanValues(input);
-        vectorsZeroMean = Vector.addVecToSet(input, Vector.scale(-1.0, meanValues));
+        calcMeanValues(input, meanValues);
+        double[] in = input.getData();
+        double[] out = vectorsZeroMean.getData();
+        for (int i = 0; i < m; ++i) {
+            double mean = meanValues[i];
+            int src = i * input.getStride();
+            int dst = i * n;
+            for (int j = 0; j < n; ++j) {
+                out[dst + j] = in[src + j] - mean;
+            }
+        }
         // calculate the covariance matrix
-        covarianceMatrix = Matrix.scale(Matrix.square(vectorsZeroMean), 1.0 / Matrix.getNumOfColumns(input));
+        if (parallel != null) {
+            parallel.run(chunks, covarianceBody);
+            double[] c = covariance.getData();
+            reducePartials(c);
+            for (int i = 0; i < m; ++i) {
+                for (int j = 0; j < i; ++j) {
+                    c[j * m + i] = c[i * m + j];
+                }
+            }
+        } else {
+            DenseMatrix.gram(vectorsZeroMean, covariance);
+        }
+        DenseMatrix.scale(covariance, 1.0 / n, covariance);
+        covariance.toArray(covarianceMatrix);
+
+        whiteningBasis();
+        project(input);
+    }
+
+    /**
+     * Derives the whitening and dewhitening matrices from
+     * <code>covarianceMatrix</code>; costs O(channels^3), independent of the
+     * number of samples.
+     */
+    private void whiteningBasis() {
+        int m = channels;
         // calculate the eigenvalue decomposition
-        EigenValueDecompositionSymm eigenDeco = new EigenValueDecompositionSymm(covarianceMatrix);
-        E = eigenDeco.getV();
-        eigenValues = eigenDeco.getRealEigenvalues();
+        decomposeSymm(covarianceMatrix, eigenValues, E);
+
+        // whitening = diag(1 / sqrt(d)) * E', dewhitening = E * diag(sqrt(d))
+        for (int i = 0; i < m; ++i) {
+            double root = Math.sqrt(Math.abs(eigenValues[i]));
+            double inv = root != 0 ? 1 / root : 0;
+            for (int j = 0; j < m; ++j) {
+                whiteningMatrix[i][j] = inv * E[j][i];
+                dewhiteningMatrix[j][i] = E[j][i] * root;
+            }
+        }
+        for (int i = 0; i < m; ++i) {
+            double sum = 0.0;
+            for (int k = 0; k < m; ++k) {
+                sum += whiteningMatrix[i][k] * meanValues[k];
+            }
+            whitenedMean[i] = sum;
+        }
+    }
+
+    /**
+     * Writes whitening * (input - mean) into the transposed sample cache in
+     * one pass over the input rows. The whitened vectors' correlation matrix
+     * equals unit matrix, which is demanded to perform the FastICA algorithm.
+     */
+    private void project(DenseMatrix input) {
+        if (parallel != null) {
+            currentInput = input;
+            parallel.run(chunks, projectionBody);
+            currentInput = null;
+        } else {
+            projectRange(input, 0, samples);
+        }
+        if (precision == Precision.FLOAT) {
+            FloatKernels.toFloat(whitenedSamples.getData(), 0, whitenedFloat, 0, samples * channels);
+        }
+    }
+
+    /**
+     * Projects the samples <code>j0</code> to <code>j1 - 1</code>.
+     */
+    private void projectRange(DenseMatrix input, int j0, int j1) {
+        int m = channels;
+        double[] in = input.getData();
+        double[] out = whitenedSamples.getData();
+        for (int j = j0, base = j0 * m; j < j1; ++j, base += m) {
+            for (int i = 0; i < m; ++i) {
+                out[base + i] = -whitenedMean[i];
+            }
+        }
+        for (int k = 0; k < m; ++k) {
+            int row = k * input.getStride();
+            for (int i = 0; i < m; ++i) {
+                double w = whiteningMatrix[i][k];
+                for (int j = j0, idx = j0 * m + i; j < j1; ++j, idx += m) {
+                    out[idx] += w * in[row + j];
+                }
+            }
+        }
+    }
 
+    /**
+     * Computes the fixed-point update w+ = E{x g(w'x)} - 3w with g(u) = u^3 for
+     * every row w of <code>prevB</code>. The whitened samples are walked once in
+     * memory order and all components are accumulated together, so no
+     * intermediate vectors are created.
+     * @param prevB the current unmixing matrix
+     * @param nextB receives the updated, not yet decorrelated rows
+     */
+    private void fixedPointUpdate(double[][] prevB, double[][] nextB) {
+        if (precision == Precision.FLOAT) {
+            fixedPointUpdateFloat(prevB, nextB);
+            return;
+        }
+        int m = channels;
+        int n = samples;
+        if (parallel != null) {
+            currentB = prevB;
+            parallel.run(chunks, expectationBody);
+            currentB = null;
+            reducePartials(sums);
+        } else {
+            accumulateExpectation(prevB, 0, n, sums, projections);
+        }
+        double scale = 1.0 / n;
+        for (int c = 0; c < m; ++c) {
+            double[] w = prevB[c];
+            double[] row = nextB[c];
+            for (int i = 0; i < m; ++i) {
+                row[i] = sums[c * m + i] * scale - 3 * w[i];
+            }
+        }
+    }
 
-        // calculate the resulting vectors
-        resVectors = Matrix.mult(Matrix.transpose(E), vectorsZeroMean);
+    /**
+     * Sums x (w'x)^3 over the samples <code>j0</code> to <code>j1 - 1</code>
+     * for every row w of <code>b</code>.
+     * @param b the unmixing matrix
+     * @param j0 the first sample
+     * @param j1 the end of the samples
+     * @param out receives the row-major channels x channels sums
+     * @param proj a channels element workspace
+     */
+    private void accumulateExpectation(double[][] b, int j0, int j1, double[] out, double[] proj) {
+        int m = channels;
+        double[] x = whitenedSamples.getData();
+        for (int k = 0; k < m * m; ++k) {
+            out[k] = 0.0;
+        }
+        for (int base = j0 * m, end = j1 * m; base < end; base += m) {
+            for (int c = 0; c < m; ++c) {
+                double[] w = b[c];
+                double one = 0.0;
+                for (int i = 0; i < m; ++i) {
+                    one += w[i] * x[base + i];
+                }
+                proj[c] = one * one * one;
+            }
+            for (int c = 0; c < m; ++c) {
+                double g = proj[c];
+                int row = c * m;
+                for (int i = 0; i < m; ++i) {
+                    out[row + i] += g * x[base + i];
+                }
+            }
+        }
+    }
 
+    /**
+     * Sums the lower triangle of the centered signals' outer products over
+     * the samples <code>j0</code> to <code>j1 - 1</code>.
+     */
+    private void accumulateGram(int j0, int j1, double[] out) {
+        int m = channels;
+        int n = samples;
+        double[] x = vectorsZeroMean.getData();
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                double sum = 0.0;
+                for (int t = j0, a = i * n + j0, b = j * n + j0; t < j1; ++t, ++a, ++b) {
+                    sum += x[a] * x[b];
+                }
+                out[i * m + j] = sum;
+            }
+        }
+    }
 
-        whiteningMatrix =
-                Matrix.mult(
-                        Matrix.diag(Vector.invVector(Matrix.sqrtVector(eigenValues))),
-                        Matrix.transpose(E));
+    /**
+     * Adds the per-chunk partials in chunk order.
+     */
+    private void reducePartials(double[] out) {
+        int size = channels * channels;
+        System.arraycopy(partials[0], 0, out, 0, size);
+        for (int c = 1; c < chunks; ++c) {
+            double[] partial = partials[c];
+            for (int k = 0; k < size; ++k) {
+                out[k] += partial[k];
+            }
+        }
+    }
 
+    private int chunkStart(int index) {
+        return Math.min(index * CHUNK_SAMPLES, samples);
+    }
 
-        dewhiteningMatrix =
-                Matrix.mult(E, Matrix.diag(Matrix.sqrtVector(eigenValues)));
-        // the whitened vectors' correlation matrix equals unit matrix
-        // which is demanded to perform the FastICA algorithm
-        whitenedVectors =
-                Matrix.mult(whiteningMatrix, vectorsZeroMean);
+    /**
+     * The fixed-point update with the expectation accumulated in float over
+     * the rounded whitened samples.
+     */
+    private void fixedPointUpdateFloat(double[][] prevB, double[][] nextB) {
+        int m = channels;
+        int n = samples;
+        for (int c = 0; c < m; ++c) {
+            FloatKernels.toFloat(prevB[c], 0, unmixingFloat, c * m, m);
+        }
+        FloatKernels.fastIcaExpectation(whitenedFloat, n, m, unmixingFloat,
+                projectionsFloat, sumsFloat);
+        double scale = 1.0 / n;
+        for (int c = 0; c < m; ++c) {
+            double[] w = prevB[c];
+            double[] row = nextB[c];
+            for (int i = 0; i < m; ++i) {
+                row[i] = sumsFloat[c * m + i] * scale - 3 * w[i];
+            }
+        }
+    }
 
+    /**
+     * Replaces B by (B * B')^(-1/2) * B.
+     */
+    private void decorrelate() {
+        if (decorrelation == Decorrelation.NEWTON_SCHULZ) {
+            decorrelateIteratively();
+            return;
+        }
+        Matrix.square(B, gram);
+        powerSymmMatrix(gram, -0.5);
+        Matrix.mult(powerResult, B, decorrelated);
+        Matrix.copy(decorrelated, B);
+    }
 
+    /**
+     * Replaces B by its polar factor with products only: after scaling B so
+     * that its largest singular value is at most one, repeats
+     * B = 3/2 B - 1/2 (B * B') * B until B * B' is the identity.
+     */
+    private void decorrelateIteratively() {
+        int m = channels;
+        Matrix.square(B, gram);
+        // the largest row sum of |B * B'| bounds its largest eigenvalue
+        double bound = 0.0;
+        for (int i = 0; i < m; ++i) {
+            double sum = 0.0;
+            for (int j = 0; j < m; ++j) {
+                sum += Math.abs(gram[i][j]);
+            }
+            bound = Math.max(bound, sum);
+        }
+        if (bound == 0.0) {
+            return;
+        }
+        double scale = 1.0 / Math.sqrt(bound);
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j < m; ++j) {
+                B[i][j] *= scale;
+                gram[i][j] /= bound;
+            }
+        }
 
+        for (int step = 0; step < MAX_DECORRELATION_STEPS; step++) {
+            double error = 0.0;
+            for (int i = 0; i < m; ++i) {
+                for (int j = 0; j < m; ++j) {
+                    error = Math.max(error, Math.abs(gram[i][j] - (i == j ? 1.0 : 0.0)));
+                }
+            }
+            if (error < ORTHONORMAL_TOLERANCE) {
+                break;
+            }
+            Matrix.mult(gram, B, decorrelated);
+            for (int i = 0; i < m; ++i) {
+                for (int j = 0; j < m; ++j) {
+                    B[i][j] = 1.5 * B[i][j] - 0.5 * decorrelated[i][j];
+                }
+            }
+            Matrix.square(B, gram);
+        }
     }
 
     /**
      * Calculates the mean vector from a set of vectors.
-     * @param inVectors the set of vectors
-     * @return the resulting mean vector
+     * @param inVectors the set of vectors, one per row
+     * @param mValues receives the mean vector
      */
-    private static double[] calcMeanValues(double[][] inVectors) {
-        int m = Matrix.getNumOfRows(inVectors);
-        int n = Matrix.getNumOfColumns(inVectors);
-        double[] mValues = Vector.newVector(m);
+    private static void calcMeanValues(DenseMatrix inVectors, double[] mValues) {
+        int m = inVectors.getRows();
+        int n = inVectors.getCols();
+        double[] data = inVectors.getData();
         for (int i = 0; i < m; ++i) {
+            int row = i * inVectors.getStride();
             mValues[i] = 0.0;
             for (int j = 0; j < n; ++j) {
-                mValues[i] += inVectors[i][j];
+                mValues[i] += data[row + j];
             }
             mValues[i] /= n;
         }
-        return (mValues);
+    }
+
+    /**
+     * Negates the rows of <code>mat</code> that point away from the same row of
+     * <code>reference</code>, so a warm-started solution keeps the signs of the
+     * one it started from.
+     */
+    private static void alignSigns(double[][] mat, double[][] reference) {
+        for (int i = 0; i < mat.length; ++i) {
+            double dot = 0.0;
+            for (int j = 0; j < mat[i].length; ++j) {
+                dot += mat[i][j] * reference[i][j];
+            }
+            if (dot < 0.0) {
+                for (int j = 0; j < mat[i].length; ++j) {
+                    mat[i][j] = -mat[i][j];
+                }
+            }
+        }
     }
 
     /**
      * Calculates a difference measure of two matrices
-     * relative to their size.
+     * relative to their size. Rows are compared up to their sign, as the
+     * fixed-point update flips the sign of sub-Gaussian components on every
+     * iteration without changing the component.
      * @param mat1 the first matrix
      * @param mat2 the second matrix
      * @return the difference measure
@@ -165,37 +840,65 @@ public class FastIca {
     private static double deltaMatrices(
             double[][] mat1,
             double[][] mat2) {
-        double[][] test = Matrix.sub(mat1, mat2);
         double delta = 0.0;
         int m = Matrix.getNumOfRows(mat1);
         int n = Matrix.getNumOfColumns(mat1);
         for (int i = 0; i < m; ++i) {
+            double same = 0.0;
+            double flipped = 0.0;
             for (int j = 0; j < n; ++j) {
-                delta += Math.abs(test[i][j]);
+                same += Math.abs(mat1[i][j] - mat2[i][j]);
+                flipped += Math.abs(mat1[i][j] + mat2[i][j]);
             }
+            delta += Math.min(same, flipped);
         }
         return (delta / (m * n));
     }
 
     /**
-     * Calculates the power of a symmetric matrix.
+     * Decomposes a symmetric matrix into the given arrays, using the unrolled
+     * solver for the small RGB-sized case and the reusable general solver
+     * otherwise.
+     */
+    private void decomposeSymm(double[][] inMatrix, double[] values, double[][] vectors) {
+        if (eigenSolver == null) {
+            SmallSymmetricEigen.decompose(inMatrix, values, vectors);
+            return;
+        }
+        int m = channels;
+        for (int i = 0; i < m; ++i) {
+            System.arraycopy(inMatrix[i], 0, eigenWork, i * m, m);
+        }
+        eigenSolver.decompose(eigenWork, values, eigenWork);
+        for (int i = 0; i < m; ++i) {
+            System.arraycopy(eigenWork, i * m, vectors[i], 0, m);
+        }
+    }
+
+    /**
+     * Calculates the power of a symmetric matrix into the
+     * <code>powerResult</code> workspace.
      * @param inMatrix the symmetric matrix
      * @param power the power
-     * @return the resulting matrix
      */
-    private static double[][] powerSymmMatrix(
+    private void powerSymmMatrix(
             double[][] inMatrix,
             double power) {
-        EigenValueDecompositionSymm eigenDeco =
-                new EigenValueDecompositionSymm(inMatrix);
         int m = Matrix.getNumOfRows(inMatrix);
-        double[][] eigenVectors = eigenDeco.getV();
-        double[] eigenValues = eigenDeco.getRealEigenvalues();
+        decomposeSymm(inMatrix, powerValues, powerVectors);
+        for (int k = 0; k < m; ++k) {
+            powerValues[k] = Math.pow(powerValues[k], power);
+        }
+        // V * diag(d) * V' without building the intermediate matrices
         for (int i = 0; i < m; ++i) {
-            eigenValues[i] = Math.pow(eigenValues[i], power);
+            for (int j = 0; j <= i; ++j) {
+                double sum = 0.0;
+                for (int k = 0; k < m; ++k) {
+                    sum += powerVectors[i][k] * powerValues[k] * powerVectors[j][k];
+                }
+                powerResult[i][j] = sum;
+                powerResult[j][i] = sum;
+            }
         }
-        return (Matrix.mult(
-                Matrix.mult(eigenVectors, Matrix.diag(eigenValues)),
-                Matrix.transpose(eigenVectors)));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * In-tree ICA backend: unmixes the channels (e.g. the forehead and cheek
+ * ROIs) with {@link FastIca}, then band-passes every component and reports
+ * the peak of the component with the best band SNR. The solver is
+ * warm-started from the previous window, so keep one estimator per face track.
+ */
+public class FastIcaPulseRateEstimator extends WindowedPulseRateEstimator {
+
+    public static final int DEFAULT_MAX_ITERATIONS = FastIca.DEFAULT_MAX_ITERATIONS;
+    public static final double DEFAULT_EPSILON = FastIca.DEFAULT_EPSILON;
+
+    private final FastIca ica;
+    private final SlidingCovariance covariance;
+    private final double[] mean;
+    private final double[][] covarianceMatrix;
+    private final ButterworthBandpass bandpass;
+    private final Fft fft;
+    private final double[][] input;
+    private final double[][] sources;
+    private final double[] component;
+    private final double[] power;
+
+    private double lastSnr = Double.NaN;
+
+    public FastIcaPulseRateEstimator(int channels, int windowSize, double fs,
+                                     double lowcut, double highcut, int order) {
+        super(channels, windowSize, fs, lowcut, highcut, order);
+        ica = new FastIca(channels, windowSize);
+        // consecutive windows overlap, so each fit starts from the previous one
+        ica.setWarmStart(true);
+        covariance = new SlidingCovariance(channels, windowSize);
+        mean = new double[channels];
+        covarianceMatrix = new double[channels][channels];
+        bandpass = new ButterworthBandpass(order, lowcut, highcut, fs);
+        fft = new Fft(windowSize);
+        input = new double[channels][windowSize];
+        sources = new double[channels][windowSize];
+        component = new double[windowSize];
+        power = new double[windowSize];
+    }
+
+    @Override
+    protected double estimateWindow() {
+        for (int c = 0; c < channels; c++) {
+            history.snapshot(c, windowSize, input[c]);
+        }
+        covariance.getMean(mean);
+        covariance.getCovariance(covarianceMatrix);
+        ica.fit(input, mean, covarianceMatrix);
+        ica.transform(input, sources);
+
+        int bestPeak = -1;
+        double bestSnr = -1.0;
+        for (int c = 0; c < sources.length; c++) {
+            System.arraycopy(sources[c], 0, component, 0, windowSize);
+            detrend(component, windowSize);
+            bandpass.reset();
+            bandpass.filter(component, component);
+            fft.powerSpectrum(component, power);
+            int peak = bandPeak(power);
+            if (peak < 0) {
+                continue;
+            }
+            double snr = bandSnr(power, peak);
+            if (snr > bestSnr) {
+                bestSnr = snr;
+                bestPeak = peak;
+            }
+        }
+        lastSnr = bestPeak < 0 ? Double.NaN : bestSnr;
+        return binToBpm(bestPeak);
+    }
+
+    @Override
+    public void push(double[] sample, long timestampNanos) {
+        super.push(sample, timestampNanos);
+        covariance.push(sample);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        covariance.clear();
+        ica.resetWarmStart();
+    }
+
+    /**
+     * Returns the band SNR of the component picked by the last estimate.
+     * @return the peak power over the power of the other band bins
+     */
+    public double getLastSnr() {
+        return lastSnr;
+    }
+}
@@ -0,0 +1,261 @@
+package com.tzutalin.dlibtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Forward discrete Fourier transform for arbitrary lengths.
+ * <p>
+ * Power-of-two lengths run an iterative radix-2 transform, every other length
+ * (e.g. the 150 sample heart-rate window) is mapped onto a power-of-two
+ * convolution with Bluestein's chirp-z algorithm. Twiddle and chirp tables are
+ * computed once per length and shared by every <code>Fft</code> of that length;
+ * each instance only owns its scratch buffers, so an instance must not be used
+ * from more than one thread at a time.
+ * <p>
+ * The output follows numpy's conventions: {@link #powerSpectrum(double[], double[])}
+ * equals <code>np.abs(np.fft.fft(x)) ** 2</code> and
+ * {@link #fftfreq(int, double, double[])} equals <code>np.fft.fftfreq(n, d)</code>.
+ */
+public class Fft {
+
+    private static final Map<Integer, Plan> PLANS = new HashMap<>();
+
+    private final int n;
+    private final Plan plan;
+    private final double[] workRe;
+    private final double[] workIm;
+    private final double[] imagBuffer;
+
+    /**
+     * Creates a transform for sequences of length <code>n</code>.
+     * @param n the transform length
+     */
+    public Fft(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("length must be positive: " + n);
+        }
+        this.n = n;
+        this.plan = planFor(n);
+        this.imagBuffer = new double[n];
+        if (plan.bluestein) {
+            workRe = new double[plan.m];
+            workIm = new double[plan.m];
+        } else {
+            workRe = null;
+            workIm = null;
+        }
+    }
+
+    public int getLength() {
+        return n;
+    }
+
+    /**
+     * Computes the forward DFT in place.
+     * @param re the real parts, length <code>n</code>
+     * @param im the imaginary parts, length <code>n</code>
+     */
+    public void transform(double[] re, double[] im) {
+        if (!plan.bluestein) {
+            radix2(plan.radix2, re, im);
+            return;
+        }
+
+        int m = plan.m;
+        double[] cr = plan.chirpRe;
+        double[] ci = plan.chirpIm;
+
+        // a_j = x_j * conj(w_j), zero padded to m
+        for (int j = 0; j < n; j++) {
+            workRe[j] = re[j] * cr[j] + im[j] * ci[j];
+            workIm[j] = im[j] * cr[j] - re[j] * ci[j];
+        }
+        for (int j = n; j < m; j++) {
+            workRe[j] = 0.0;
+            workIm[j] = 0.0;
+        }
+
+        // circular convolution with w through the spectrum of w
+        radix2(plan.radix2, workRe, workIm);
+        double[] br = plan.filterRe;
+        double[] bi = plan.filterIm;
+        for (int j = 0; j < m; j++) {
+            double r = workRe[j] * br[j] - workIm[j] * bi[j];
+            double i = workRe[j] * bi[j] + workIm[j] * br[j];
+            // conjugate so that a forward transform acts as the inverse
+            workRe[j] = r;
+            workIm[j] = -i;
+        }
+        radix2(plan.radix2, workRe, workIm);
+
+        // X_k = conj(w_k) * conj(result_k) / m
+        double scale = 1.0 / m;
+        for (int k = 0; k < n; k++) {
+            double r = workRe[k] * scale;
+            double i = -workIm[k] * scale;
+            re[k] = r * cr[k] + i * ci[k];
+            im[k] = i * cr[k] - r * ci[k];
+        }
+    }
+
+    /**
+     * Computes the power spectrum of a real sequence.
+     * @param input the samples, length <code>n</code>; left untouched
+     * @param output receives <code>|X_k|^2</code> for all <code>n</code> bins
+     * @param scratch an array of length <code>n</code> used as imaginary part
+     */
+    public void powerSpectrum(double[] input, double[] output, double[] scratch) {
+        System.arraycopy(input, 0, output, 0, n);
+        for (int i = 0; i < n; i++) {
+            scratch[i] = 0.0;
+        }
+        transform(output, scratch);
+        for (int i = 0; i < n; i++) {
+            output[i] = output[i] * output[i] + scratch[i] * scratch[i];
+        }
+    }
+
+    /**
+     * Computes the power spectrum of a real sequence, using the instance's
+     * own imaginary-part buffer.
+     * @param input the samples, length <code>n</code>; left untouched
+     * @param output receives <code>|X_k|^2</code> for all <code>n</code> bins
+     */
+    public void powerSpectrum(double[] input, double[] output) {
+        powerSpectrum(input, output, imagBuffer);
+    }
+
+    /**
+     * Writes the sample frequencies of an <code>n</code> point DFT.
+     * @param n the transform length
+     * @param d the sample spacing, e.g. <code>1.0 / fs</code>
+     * @param output receives <code>n</code> frequencies in numpy's order
+     */
+    public static void fftfreq(int n, double d, double[] output) {
+        double val = 1.0 / (n * d);
+        int positive = (n - 1) / 2 + 1;
+        for (int i = 0; i < positive; i++) {
+            output[i] = i * val;
+        }
+        for (int i = positive; i < n; i++) {
+            output[i] = (i - n) * val;
+        }
+    }
+
+    private static synchronized Plan planFor(int n) {
+        Plan plan = PLANS.get(n);
+        if (plan == null) {
+            plan = new Plan(n);
+            PLANS.put(n, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Immutable tables for one power-of-two length.
+     */
+    private static final class Radix2Tables {
+        final int m;
+        final int[] bitReverse;
+        final double[] cos;
+        final double[] sin;
+
+        Radix2Tables(int m) {
+            this.m = m;
+            int bits = Integer.numberOfTrailingZeros(m);
+            bitReverse = new int[m];
+            for (int i = 0; i < m; i++) {
+                bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+            cos = new double[m / 2];
+            sin = new double[m / 2];
+            for (int i = 0; i < m / 2; i++) {
+                double angle = -2.0 * Math.PI * i / m;
+                cos[i] = Math.cos(angle);
+                sin[i] = Math.sin(angle);
+            }
+        }
+    }
+
+    /**
+     * Immutable tables for one transform length.
+     */
+    private static final class Plan {
+        final boolean bluestein;
+        final int m;
+        final Radix2Tables radix2;
+        final double[] chirpRe;
+        final double[] chirpIm;
+        final double[] filterRe;
+        final double[] filterIm;
+
+        Plan(int n) {
+            bluestein = Integer.bitCount(n) != 1;
+            if (!bluestein) {
+                m = n;
+                radix2 = new Radix2Tables(n);
+                chirpRe = chirpIm = filterRe = filterIm = null;
+                return;
+            }
+
+            m = Integer.highestOneBit(2 * n - 1) << 1;
+            radix2 = new Radix2Tables(m);
+
+            // w_k = exp(i * pi * k^2 / n); k^2 is reduced mod 2n to keep the angle exact
+            chirpRe = new double[n];
+            chirpIm = new double[n];
+            long twoN = 2L * n;
+            for (int k = 0; k < n; k++) {
+                double angle = Math.PI * (((long) k * k) % twoN) / n;
+                chirpRe[k] = Math.cos(angle);
+                chirpIm[k] = Math.sin(angle);
+            }
+
+            filterRe = new double[m];
+            filterIm = new double[m];
+            filterRe[0] = chirpRe[0];
+            filterIm[0] = chirpIm[0];
+            for (int k = 1; k < n; k++) {
+                filterRe[k] = filterRe[m - k] = chirpRe[k];
+                filterIm[k] = filterIm[m - k] = chirpIm[k];
+            }
+            radix2(radix2, filterRe, filterIm);
+        }
+    }
+
+    private static void radix2(Radix2Tables t, double[] re, double[] im) {
+        int m = t.m;
+        int[] rev = t.bitReverse;
+        for (int i = 0; i < m; i++) {
+            int j = rev[i];
+            if (j > i) {
+                double tr = re[i];
+                re[i] = re[j];
+                re[j] = tr;
+                double ti = im[i];
+                im[i] = im[j];
+                im[j] = ti;
+            }
+        }
+
+        for (int size = 2; size <= m; size <<= 1) {
+            int half = size >> 1;
+            int step = m / size;
+            for (int start = 0; start < m; start += size) {
+                for (int k = 0; k < half; k++) {
+                    double wr = t.cos[k * step];
+                    double wi = t.sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+}
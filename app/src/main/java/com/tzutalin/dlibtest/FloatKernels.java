@@ -0,0 +1,136 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Single precision versions of the hot numerical kernels.
+ * <p>
+ * The signals are means of 8-bit colour values, so float carries more than
+ * enough precision for the per-sample work, while halving the memory traffic
+ * of the double kernels. Every inner loop is a plain counted loop over one
+ * contiguous range, the shape the ART and HotSpot compilers vectorise (NEON on
+ * arm64-v8a); sums are still accumulated in float. Matrices are flat row-major
+ * arrays with an explicit leading dimension, as in {@link DenseMatrix}.
+ * Nothing here allocates.
+ */
+public final class FloatKernels {
+
+    private FloatKernels() {
+    }
+
+    /**
+     * Calculates the dot product of two ranges.
+     * @param a the first array
+     * @param offA the start in <code>a</code>
+     * @param b the second array
+     * @param offB the start in <code>b</code>
+     * @param n the number of elements
+     * @return the dot product
+     */
+    public static float dot(float[] a, int offA, float[] b, int offB, int n) {
+        float sum = 0f;
+        for (int k = 0; k < n; k++) {
+            sum += a[offA + k] * b[offB + k];
+        }
+        return sum;
+    }
+
+    /**
+     * Calculates y = alpha * x + y over a range.
+     * @param alpha the factor
+     * @param x the added array
+     * @param offX the start in <code>x</code>
+     * @param y the accumulated array
+     * @param offY the start in <code>y</code>
+     * @param n the number of elements
+     */
+    public static void axpy(float alpha, float[] x, int offX, float[] y, int offY, int n) {
+        for (int k = 0; k < n; k++) {
+            y[offY + k] += alpha * x[offX + k];
+        }
+    }
+
+    /**
+     * Calculates C = A * B in i-k-j order, so the innermost loop is an axpy
+     * over a row of B and a row of C.
+     * @param m the rows of A and C
+     * @param n the columns of A and rows of B
+     * @param o the columns of B and C
+     * @param a the m*n matrix
+     * @param lda the row stride of <code>a</code>
+     * @param b the n*o matrix
+     * @param ldb the row stride of <code>b</code>
+     * @param c the m*o destination, not sharing storage with an operand
+     * @param ldc the row stride of <code>c</code>
+     */
+    public static void gemm(int m, int n, int o,
+                            float[] a, int lda, float[] b, int ldb, float[] c, int ldc) {
+        for (int i = 0; i < m; i++) {
+            int rowC = i * ldc;
+            for (int j = 0; j < o; j++) {
+                c[rowC + j] = 0f;
+            }
+            for (int k = 0; k < n; k++) {
+                axpy(a[i * lda + k], b, k * ldb, c, rowC, o);
+            }
+        }
+    }
+
+    /**
+     * Calculates the Gram matrix C = A * A' from row dot products, computing
+     * the lower triangle and mirroring it.
+     * @param m the rows of A
+     * @param n the columns of A
+     * @param a the m*n matrix
+     * @param lda the row stride of <code>a</code>
+     * @param c the m*m destination
+     * @param ldc the row stride of <code>c</code>
+     */
+    public static void gram(int m, int n, float[] a, int lda, float[] c, int ldc) {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j <= i; j++) {
+                float sum = dot(a, i * lda, a, j * lda, n);
+                c[i * ldc + j] = sum;
+                c[j * ldc + i] = sum;
+            }
+        }
+    }
+
+    /**
+     * Accumulates the FastICA expectation E{x (w'x)^3} for every row w of
+     * <code>w</code>, without the -3w term.
+     * @param x the whitened samples, sample-major: channel i of sample j at j * m + i
+     * @param n the number of samples
+     * @param m the number of channels and components
+     * @param w the m*m unmixing matrix, row-major
+     * @param projections an m element workspace
+     * @param sums receives the m*m row-major sums over all samples, not yet divided by n
+     */
+    public static void fastIcaExpectation(float[] x, int n, int m, float[] w,
+                                          float[] projections, float[] sums) {
+        for (int k = 0; k < m * m; k++) {
+            sums[k] = 0f;
+        }
+        for (int base = 0, end = n * m; base < end; base += m) {
+            for (int c = 0; c < m; c++) {
+                float one = dot(w, c * m, x, base, m);
+                projections[c] = one * one * one;
+            }
+            for (int c = 0; c < m; c++) {
+                axpy(projections[c], x, base, sums, c * m, m);
+            }
+        }
+    }
+
+    /**
+     * Rounds a range of doubles to floats.
+     * @param src the doubles
+     * @param offSrc the start in <code>src</code>
+     * @param dst the floats
+     * @param offDst the start in <code>dst</code>
+     * @param n the number of elements
+     */
+    public static void toFloat(double[] src, int offSrc, float[] dst, int offDst, int n) {
+        for (int k = 0; k < n; k++) {
+            dst[offDst + k] = (float) src[offSrc + k];
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Fixed-point HSV hue of 8-bit colours.
+ * <p>
+ * Gives the hue of <code>Color.RGBToHSV</code> in units of 1/{@link #SCALE}
+ * degree, to within one unit, using only integer arithmetic: the division by
+ * the chroma range goes through a 255-entry reciprocal table. No JNI call and
+ * no float[] per pixel.
+ */
+public final class Hue {
+
+    /** Hue units per degree. */
+    public static final int SCALE = 64;
+    /** Hue of a full turn, 360 degrees, in hue units. */
+    public static final int FULL_TURN = 360 * SCALE;
+
+    private static final int SIXTY = 60 * SCALE;
+    private static final int SHIFT = 8;
+    // RECIPROCAL[d] = 60 degrees / d in hue units, scaled by 2^SHIFT
+    private static final int[] RECIPROCAL = new int[256];
+
+    static {
+        for (int d = 1; d < RECIPROCAL.length; d++) {
+            RECIPROCAL[d] = ((SIXTY << SHIFT) + d / 2) / d;
+        }
+    }
+
+    private Hue() {
+    }
+
+    /**
+     * Returns the hue of a colour; greys have hue 0.
+     * @param r red, 0 - 255
+     * @param g green, 0 - 255
+     * @param b blue, 0 - 255
+     * @return the hue in [0, {@link #FULL_TURN}) hue units
+     */
+    public static int fromRgb(int r, int g, int b) {
+        int max = r > g ? (r > b ? r : b) : (g > b ? g : b);
+        int min = r < g ? (r < b ? r : b) : (g < b ? g : b);
+        int delta = max - min;
+        if (delta == 0) {
+            return 0;
+        }
+        int h;
+        if (r == max) {
+            h = ((g - b) * RECIPROCAL[delta] + (1 << (SHIFT - 1))) >> SHIFT;
+            if (h < 0) {
+                h += FULL_TURN;
+            }
+        } else if (g == max) {
+            h = 2 * SIXTY + (((b - r) * RECIPROCAL[delta] + (1 << (SHIFT - 1))) >> SHIFT);
+        } else {
+            h = 4 * SIXTY + (((r - g) * RECIPROCAL[delta] + (1 << (SHIFT - 1))) >> SHIFT);
+        }
+        return h;
+    }
+
+    /**
+     * Returns the hue of a packed colour, ignoring alpha.
+     * @param argb the colour as 0xAARRGGBB
+     * @return the hue in [0, {@link #FULL_TURN}) hue units
+     */
+    public static int fromArgb(int argb) {
+        return fromRgb((argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff);
+    }
+}
@@ -22,6 +22,7 @@ import android.support.annotation.Keep;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
 
 import timber.log.Timber;
 
@@ -117,6 +118,38 @@ public class ImageUtils {
             int uvPixelStride,
             boolean halfSize);
 
+    /**
+     * Converts YUV420 planar data to ARGB 8888 data, reading the planes of an
+     * <code>Image</code> in place. This runs in Java and gives the same pixels
+     * as the native overload, without first copying each plane into a byte[],
+     * so the <code>Image</code> can be closed as soon as it returns. The
+     * buffers' positions are not changed.
+     *
+     * @param y             The luma plane buffer.
+     * @param u             The Cb plane buffer.
+     * @param v             The Cr plane buffer.
+     * @param output        A pre-allocated array for the ARGB 8:8:8:8 output data.
+     * @param width         The width of the input image.
+     * @param height        The height of the input image.
+     * @param yRowStride    The distance between luma rows in bytes.
+     * @param uvRowStride   The distance between chroma rows in bytes.
+     * @param uvPixelStride The distance between neighbouring chroma samples in bytes.
+     * @param halfSize      If true, downsample to 50% in each dimension, otherwise not.
+     */
+    public static void convertYUV420ToARGB8888(
+            ByteBuffer y,
+            ByteBuffer u,
+            ByteBuffer v,
+            int[] output,
+            int width,
+            int height,
+            int yRowStride,
+            int uvRowStride,
+            int uvPixelStride,
+            boolean halfSize) {
+        Yuv420.toArgb(y, u, v, output, width, height, yRowStride, uvRowStride, uvPixelStride, halfSize);
+    }
+
     /**
      * Converts YUV420 semi-planar data to RGB 565 data using the supplied width
      * and height. The input and output must already be allocated and non-null.
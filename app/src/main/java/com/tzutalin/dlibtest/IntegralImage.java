@@ -0,0 +1,238 @@
+package com.tzutalin.dlibtest;
+
+import android.graphics.Rect;
+
+/**
+ * Summed-area tables of red, green, blue and hue, and of their squares, over
+ * one rectangular region of a frame.
+ * <p>
+ * Building the tables costs one pass over the region; afterwards the mean and
+ * variance of any rectangle inside it take four lookups per table, however
+ * large the rectangle, so many candidate patches can be evaluated per frame.
+ * Channels are indexed like {@link ColorStats} and hold the same quantities:
+ * colours 0 - 255 and hue from {@link Hue}. Sums are exact integers, so a
+ * rectangle gives the same mean as accumulating its pixels in a ColorStats.
+ * <p>
+ * Rows are added top to bottom with {@link #appendRow(int[], int)} after
+ * {@link #begin(int, int, int, int)}, or all at once with
+ * {@link #build(int[], int, int, int, int, int, int)}. Coordinates are
+ * those of the frame, not of the region. Tables are reused while the region
+ * fits into them. Instances are not thread safe.
+ */
+public class IntegralImage {
+
+    private static final int CHANNELS = ColorStats.CHANNELS;
+
+    private final long[][] sums = new long[CHANNELS][];
+    private final long[][] sumSquares = new long[CHANNELS][];
+
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+    private int rows;
+    private final Rect clipped = new Rect();
+
+    public IntegralImage() {
+        for (int c = 0; c < CHANNELS; c++) {
+            sums[c] = new long[0];
+            sumSquares[c] = new long[0];
+        }
+    }
+
+    /**
+     * Starts tables for a new region; the rows follow with
+     * {@link #appendRow(int[], int)}.
+     * @param left the first column of the region
+     * @param top the first row of the region
+     * @param width the number of columns
+     * @param height the number of rows
+     */
+    public void begin(int left, int top, int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("region size must not be negative: " + width + "x" + height);
+        }
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.rows = 0;
+        int size = (width + 1) * (height + 1);
+        for (int c = 0; c < CHANNELS; c++) {
+            if (sums[c].length < size) {
+                sums[c] = new long[size];
+                sumSquares[c] = new long[size];
+            }
+            // the first row and column of each table stay zero
+            for (int x = 0; x <= width; x++) {
+                sums[c][x] = 0;
+                sumSquares[c][x] = 0;
+            }
+        }
+    }
+
+    /**
+     * Adds the next row of the region.
+     * @param argb the colours as 0xAARRGGBB; alpha is ignored
+     * @param offset the index of the row's first pixel in <code>argb</code>
+     */
+    public void appendRow(int[] argb, int offset) {
+        if (rows >= height) {
+            throw new IllegalStateException("all " + height + " rows have been added");
+        }
+        int stride = width + 1;
+        int above = rows * stride;
+        int here = above + stride;
+        long[] red = sums[ColorStats.RED];
+        long[] green = sums[ColorStats.GREEN];
+        long[] blue = sums[ColorStats.BLUE];
+        long[] hue = sums[ColorStats.HUE];
+        long[] red2 = sumSquares[ColorStats.RED];
+        long[] green2 = sumSquares[ColorStats.GREEN];
+        long[] blue2 = sumSquares[ColorStats.BLUE];
+        long[] hue2 = sumSquares[ColorStats.HUE];
+        red[here] = 0;
+        green[here] = 0;
+        blue[here] = 0;
+        hue[here] = 0;
+        red2[here] = 0;
+        green2[here] = 0;
+        blue2[here] = 0;
+        hue2[here] = 0;
+        long r = 0;
+        long g = 0;
+        long b = 0;
+        long h = 0;
+        long r2 = 0;
+        long g2 = 0;
+        long b2 = 0;
+        long h2 = 0;
+        for (int x = 0; x < width; x++) {
+            int pixel = argb[offset + x];
+            int pr = (pixel >> 16) & 0xff;
+            int pg = (pixel >> 8) & 0xff;
+            int pb = pixel & 0xff;
+            int ph = Hue.fromRgb(pr, pg, pb);
+            r += pr;
+            g += pg;
+            b += pb;
+            h += ph;
+            r2 += pr * pr;
+            g2 += pg * pg;
+            b2 += pb * pb;
+            h2 += (long) ph * ph;
+            int i = here + x + 1;
+            int j = above + x + 1;
+            red[i] = red[j] + r;
+            green[i] = green[j] + g;
+            blue[i] = blue[j] + b;
+            hue[i] = hue[j] + h;
+            red2[i] = red2[j] + r2;
+            green2[i] = green2[j] + g2;
+            blue2[i] = blue2[j] + b2;
+            hue2[i] = hue2[j] + h2;
+        }
+        rows++;
+    }
+
+    /**
+     * Builds the tables of a region from a block of pixels, as returned by
+     * <code>Bitmap.getPixels</code>.
+     * @param argb the colours as 0xAARRGGBB
+     * @param offset the index of the region's first pixel in <code>argb</code>
+     * @param stride the distance between rows in <code>argb</code>
+     * @param left the first column of the region in frame coordinates
+     * @param top the first row of the region in frame coordinates
+     * @param width the number of columns
+     * @param height the number of rows
+     */
+    public void build(int[] argb, int offset, int stride, int left, int top, int width, int height) {
+        begin(left, top, width, height);
+        for (int y = 0; y < height; y++) {
+            appendRow(argb, offset + y * stride);
+        }
+    }
+
+    /**
+     * Returns the region covered by the tables.
+     * @param res the destination
+     * @return res
+     */
+    public Rect getRegion(Rect res) {
+        res.set(left, top, left + width, top + rows);
+        return res;
+    }
+
+    /**
+     * Returns the number of pixels of a rectangle that lie in the region.
+     * @param rect the rectangle in frame coordinates
+     * @return the pixel count after clipping
+     */
+    public int getCount(Rect rect) {
+        return clip(rect) ? clipped.width() * clipped.height() : 0;
+    }
+
+    /**
+     * Returns the mean of a channel over a rectangle, clipped to the region.
+     * @param channel one of the {@link ColorStats} channels
+     * @param rect the rectangle in frame coordinates
+     * @return the mean, or NaN if no pixel of the rectangle lies in the region
+     */
+    public double getMean(int channel, Rect rect) {
+        if (!clip(rect)) {
+            return Double.NaN;
+        }
+        double mean = (double) boxSum(sums[channel]) / (clipped.width() * clipped.height());
+        return channel == ColorStats.HUE ? mean / Hue.SCALE : mean;
+    }
+
+    /**
+     * Returns the population variance of a channel over a rectangle, clipped
+     * to the region.
+     * @param channel one of the {@link ColorStats} channels
+     * @param rect the rectangle in frame coordinates
+     * @return the variance, or NaN if no pixel of the rectangle lies in the region
+     */
+    public double getVariance(int channel, Rect rect) {
+        if (!clip(rect)) {
+            return Double.NaN;
+        }
+        int count = clipped.width() * clipped.height();
+        double mean = (double) boxSum(sums[channel]) / count;
+        double variance = Math.max(0.0, (double) boxSum(sumSquares[channel]) / count - mean * mean);
+        return channel == ColorStats.HUE ? variance / (Hue.SCALE * Hue.SCALE) : variance;
+    }
+
+    /**
+     * Writes the means of all channels over a rectangle, clipped to the region.
+     * @param rect the rectangle in frame coordinates
+     * @param res the destination for the {@link ColorStats#CHANNELS} means; left
+     * untouched if no pixel of the rectangle lies in the region
+     * @return the number of pixels averaged
+     */
+    public int getMeans(Rect rect, double[] res) {
+        if (!clip(rect)) {
+            return 0;
+        }
+        int count = clipped.width() * clipped.height();
+        for (int c = 0; c < CHANNELS; c++) {
+            res[c] = (double) boxSum(sums[c]) / count;
+        }
+        res[ColorStats.HUE] /= Hue.SCALE;
+        return count;
+    }
+
+    private boolean clip(Rect rect) {
+        clipped.set(rect);
+        return clipped.intersect(left, top, left + width, top + rows);
+    }
+
+    private long boxSum(long[] table) {
+        int stride = width + 1;
+        int x0 = clipped.left - left;
+        int x1 = clipped.right - left;
+        int y0 = (clipped.top - top) * stride;
+        int y1 = (clipped.bottom - top) * stride;
+        return table[y1 + x1] - table[y1 + x0] - table[y0 + x1] + table[y0 + x0];
+    }
+}
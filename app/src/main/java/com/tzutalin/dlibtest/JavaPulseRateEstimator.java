@@ -0,0 +1,47 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Pure-Java backend: averages the channels, then z-normalizes, detrends,
+ * band-passes and searches the power spectrum of each window without
+ * leaving the JVM. For a single averaged channel the ICA step of the Python
+ * pipeline only fixes sign and scale, which does not move the spectral peak,
+ * so it is skipped.
+ */
+public class JavaPulseRateEstimator extends WindowedPulseRateEstimator {
+
+    private final ButterworthBandpass bandpass;
+    private final Fft fft;
+    private final double[] window;
+    private final double[] power;
+
+    private double lastSnr = Double.NaN;
+
+    public JavaPulseRateEstimator(int channels, int windowSize, double fs,
+                                  double lowcut, double highcut, int order) {
+        super(channels, windowSize, fs, lowcut, highcut, order);
+        bandpass = new ButterworthBandpass(order, lowcut, highcut, fs);
+        fft = new Fft(windowSize);
+        window = new double[windowSize];
+        power = new double[windowSize];
+    }
+
+    @Override
+    protected double estimateWindow() {
+        averageStats.zNormalize(window);
+        detrend(window, windowSize);
+        bandpass.reset();
+        bandpass.filter(window, window);
+        fft.powerSpectrum(window, power);
+        int peak = bandPeak(power);
+        lastSnr = peak < 0 ? Double.NaN : bandSnr(power, peak);
+        return binToBpm(peak);
+    }
+
+    /**
+     * Returns the band SNR of the last estimate.
+     * @return the peak power over the power of the other band bins
+     */
+    public double getLastSnr() {
+        return lastSnr;
+    }
+}
@@ -125,6 +125,34 @@ public class Matrix {
         return (matres);
     }
 
+    /**
+     * Multiplicates two matrices into a pre-allocated matrix.
+     * The result must not be one of the operands.
+     * @param mat1 the first matrix
+     * @param mat2 the second matrix
+     * @param res the m*o destination
+     * @return <code>res</code>
+     */
+    public static double[][] mult(double[][] mat1, double[][] mat2, double[][] res) {
+        int m = mat1.length;
+        int n = mat1[0].length;
+        int o = mat2[0].length;
+        for (int i = 0; i < m; ++i) {
+            double[] row = res[i];
+            for (int j = 0; j < o; ++j) {
+                row[j] = 0.0;
+            }
+            for (int k = 0; k < n; ++k) {
+                double a = mat1[i][k];
+                double[] other = mat2[k];
+                for (int j = 0; j < o; ++j) {
+                    row[j] += a * other[j];
+                }
+            }
+        }
+        return (res);
+    }
+
     /**
      * Performs a matrix vector multiplication and returns the result
      * in a new vector object.
@@ -358,6 +386,42 @@ public class Matrix {
         }
         return (res);
     }
+    /**
+     * Calculates the square matrix A * A' into a pre-allocated matrix.
+     * @param mat the input matrix
+     * @param res the m*m destination
+     * @return <code>res</code>
+     */
+    public static double[][] square(
+            double[][] mat,
+            double[][] res) {
+        int m = Matrix.getNumOfRows(mat);
+        int n = Matrix.getNumOfColumns(mat);
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                double sum = 0.0;
+                for (int k = 0; k < n; ++k) {
+                    sum += mat[i][k] * mat[j][k];
+                }
+                res[i][j] = sum;
+                res[j][i] = sum;
+            }
+        }
+        return (res);
+    }
+
+    /**
+     * Copies a matrix into a pre-allocated matrix of the same size.
+     * @param mat the matrix to copy
+     * @param res the destination
+     * @return <code>res</code>
+     */
+    public static double[][] copy(double[][] mat, double[][] res) {
+        for (int i = 0; i < mat.length; ++i) {
+            System.arraycopy(mat[i], 0, res[i], 0, mat[i].length);
+        }
+        return (res);
+    }
     // only work for 3 x 3 matrix
     public static double[] invMatrix(double[]mat)
     {
@@ -0,0 +1,39 @@
+package com.tzutalin.dlibtest;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+/**
+ * Chaquopy backend: averages the channels and hands each z-normalized window
+ * to <code>NpScipy.estimate_pulse_buffer</code> through direct buffers, one
+ * Python crossing per estimate.
+ */
+public class NpScipyPulseRateEstimator extends WindowedPulseRateEstimator {
+
+    private final ByteBuffer windowBuffer;
+    private final DoubleBuffer windowDoubles;
+    private final ByteBuffer resultBuffer;
+
+    public NpScipyPulseRateEstimator(int channels, int windowSize, double fs,
+                                     double lowcut, double highcut, int order) {
+        super(channels, windowSize, fs, lowcut, highcut, order);
+        windowBuffer = PyMathBridge.allocateDoubles(windowSize);
+        windowDoubles = windowBuffer.asDoubleBuffer();
+        resultBuffer = PyMathBridge.allocateDoubles(PyMathBridge.RESULT_LENGTH);
+    }
+
+    @Override
+    protected double estimateWindow() {
+        averageStats.zNormalize(windowDoubles);
+        PyMathBridge.estimatePulse(windowBuffer, windowSize, resultBuffer, fs, lowcut, highcut, order);
+        return resultBuffer.getDouble(PyMathBridge.RESULT_PEAK_FREQUENCY * 8) * 60.0;
+    }
+
+    /**
+     * Returns the band SNR of the last estimate.
+     * @return the peak power over the power of the other band bins
+     */
+    public double getLastSnr() {
+        return resultBuffer.getDouble(PyMathBridge.RESULT_SNR * 8);
+    }
+}
@@ -48,18 +48,10 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
-import jsat.datatransform.FastICA;
-
 import static java.lang.StrictMath.abs;
 
-
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
-import com.chaquo.python.android.AndroidPlatform;
-
 import java.util.Arrays;
 
-import static_proxy.PyMathLib.*;
 /**
  * Class that takes in preview frames and converts the image to Bitmaps to process with dlib lib.
  */
@@ -73,13 +65,59 @@ public class OnGetImageListener implements OnImageAvailableListener {
 
     private int mPreviewWdith = 0;
     private int mPreviewHeight = 0;
-    private byte[][] mYUVBytes;
+    // Also the frame mRoiSampler reads; with mIsComputing set it is not overwritten until
+    // the ROIs of the frame are sampled.
     private int[] mRGBBytes = null;
     private Bitmap mRGBframeBitmap = null;
     private Bitmap mCroppedBitmap = null;
 
-    private List<Integer> meanlist = new ArrayList<>();
-    private int cutlow = 0;
+    // Rate of the uniform grid the DSP runs on; frames are resampled onto it by their
+    // timestamps, so it can be lowered (e.g. to 15 Hz) on devices that drop frames.
+    private static final double SAMPLING_RATE = 30.0;
+    private static final double WINDOW_SECONDS = 5.0;
+    private static final double LOWCUT = 0.75;
+    private static final double HIGHCUT = 4.0;
+    private static final int FILTER_ORDER = 4;
+
+    private static final int WINDOW_SIZE = (int) Math.round(WINDOW_SECONDS * SAMPLING_RATE);
+    private static final int ROI_COUNT = 3;
+    private final PulseRateEstimator mPulseEstimator = PulseRateEstimators.create(
+            PulseRateEstimators.DEFAULT_BACKEND, ROI_COUNT, WINDOW_SIZE, SAMPLING_RATE, LOWCUT, HIGHCUT, FILTER_ORDER);
+    private final double[] mRoiSample = new double[ROI_COUNT];
+    // Logs each ROI sample as "RoiTrace: timestampNanos,roi0,roi1,roi2", the format of the
+    // recorded traces PulseRateEstimatorParityTest replays.
+    private static final boolean LOG_ROI_TRACE = false;
+    // ROI colour is read at sensor resolution, not from the resized detector bitmap.
+    private final YuvRoiSampler mRoiSampler = new YuvRoiSampler();
+    private final Rect mSampleRect = new Rect();
+    private final double[] mRoiMeans = new double[YuvRoiSampler.CHANNELS];
+    // Summed-area tables over the face, built once per face so each ROI costs O(1).
+    private final IntegralImage mFaceIntegral = new IntegralImage();
+    private final Rect mFaceRegion = new Rect();
+    private final UniformResampler mResampler =
+            new UniformResampler(ROI_COUNT, SAMPLING_RATE, UniformResampler.Interpolation.CUBIC);
+    private final double[] mGridSample = new double[ROI_COUNT];
+    // Longest frame gap the resamplers interpolate across; longer dropouts restart the windows.
+    private static final long MAX_GAP_NANOS = UniformResampler.DEFAULT_MAX_GAP_NANOS;
+    private long mSampleCount = 0;
+    // Grid samples between pulse estimates, and the sample count of the next one.
+    private static final int ESTIMATE_HOP = 5;
+    private long mNextEstimateAt = WINDOW_SIZE;
+    private long mFrameTimestamp = 0;
+
+    // Per-frame path: a grid of face patches, band-passed and fused by SNR, feeding the
+    // heart-rate bins of a sliding DFT. When set, its peak replaces the windowed estimate of
+    // the three ROIs, which are then not sampled; otherwise the grid is not run at all.
+    private static final boolean STREAMING_PULSE = true;
+    private static final int PATCH_ROWS = 4;
+    private static final int PATCH_COLS = 4;
+    private final PatchGrid mPatchGrid = new PatchGrid(
+            PATCH_ROWS, PATCH_COLS, WINDOW_SIZE, SAMPLING_RATE, LOWCUT, HIGHCUT, FILTER_ORDER);
+    private final double[] mPatchSample = new double[PATCH_ROWS * PATCH_COLS];
+    private final UniformResampler mPatchResampler = new UniformResampler(
+            PATCH_ROWS * PATCH_COLS, SAMPLING_RATE, UniformResampler.Interpolation.CUBIC);
+    private final double[] mPatchGridSample = new double[PATCH_ROWS * PATCH_COLS];
+    private final SlidingDft mSlidingDft = new SlidingDft(WINDOW_SIZE, SAMPLING_RATE, LOWCUT, HIGHCUT);
 
     private boolean mIsComputing = false;
     private Handler mInferenceHandler;
@@ -101,6 +139,8 @@ public class OnGetImageListener implements OnImageAvailableListener {
         this.mTransparentTitleView = scoreView;
         this.mInferenceHandler = handler;
         mFaceDet = new FaceDet(Constants.getFaceShapeModelPath());
+        mResampler.setMaxGap(MAX_GAP_NANOS);
+        mPatchResampler.setMaxGap(MAX_GAP_NANOS);
         mWindow = new FloatingCameraWindow(mContext);
 
         mFaceLandmardkPaint = new Paint();
@@ -197,24 +237,18 @@ public class OnGetImageListener implements OnImageAvailableListener {
                 mRGBBytes = new int[mPreviewWdith * mPreviewHeight];
                 mRGBframeBitmap = Bitmap.createBitmap(mPreviewWdith, mPreviewHeight, Config.ARGB_8888);
                  mCroppedBitmap= Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Config.ARGB_8888);
-
-                mYUVBytes = new byte[planes.length][];
-                for (int i = 0; i < planes.length; ++i) {
-                    mYUVBytes[i] = new byte[planes[i].getBuffer().capacity()];
-                }
             }
 
-            for (int i = 0; i < planes.length; ++i) {
-                planes[i].getBuffer().get(mYUVBytes[i]);
-            }
+            mFrameTimestamp = image.getTimestamp();
 
             final int yRowStride = planes[0].getRowStride();
             final int uvRowStride = planes[1].getRowStride();
             final int uvPixelStride = planes[1].getPixelStride();
+            // Reads the planes in place, so there is no full-frame byte[] copy per frame.
             ImageUtils.convertYUV420ToARGB8888(
-                    mYUVBytes[0],
-                    mYUVBytes[1],
-                    mYUVBytes[2],
+                    planes[0].getBuffer(),
+                    planes[1].getBuffer(),
+                    planes[2].getBuffer(),
                     mRGBBytes,
                     mPreviewWdith,
                     mPreviewHeight,
@@ -222,6 +256,7 @@ public class OnGetImageListener implements OnImageAvailableListener {
                     uvRowStride,
                     uvPixelStride,
                     false);
+            mRoiSampler.setFrame(mRGBBytes, mPreviewWdith, mPreviewHeight);
 
             image.close();
         } catch (final Exception e) {
@@ -235,266 +270,244 @@ public class OnGetImageListener implements OnImageAvailableListener {
 
         mRGBframeBitmap.setPixels(mRGBBytes, 0, mPreviewWdith, 0, 0, mPreviewWdith, mPreviewHeight);
         drawResizedBitmap(mRGBframeBitmap, mCroppedBitmap);
+        mRoiSampler.setViewGeometry(INPUT_SIZE, mScreenRotation);
 
         if (SAVE_PREVIEW_BITMAP) {
             ImageUtils.saveBitmap(mCroppedBitmap);
         }
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        final long frameTimestamp = mFrameTimestamp;
         mInferenceHandler.post(
                 new Runnable() {
                     @Override
                     public void run() {
-                        if (!new File(Constants.getFaceShapeModelPath()).exists()) {
-                            mTransparentTitleView.setText("Copying landmark model to " + Constants.getFaceShapeModelPath());
-                            FileUtils.copyFileFromRawToOthers(mContext, R.raw.shape_predictor_68_face_landmarks, Constants.getFaceShapeModelPath());
-                        }
-
-                        long startTime = System.currentTimeMillis();
-                        List<VisionDetRet> results;
-                        synchronized (OnGetImageListener.this) {
-                            results = mFaceDet.detect(mCroppedBitmap);
-                        }
-                        long endTime = System.currentTimeMillis();
-                        //mTransparentTitleView.setText("Time cost: " + String.valueOf((endTime - startTime) / 1000f) + " sec");
-                        // Draw on bitmap
-                        if (results != null) {
-
-                            String fileTitle = dateFormat.format(new Date()); // Find todays date
-                            writeToFile(fileTitle, "");
-
-                            for (final VisionDetRet ret : results) {
-                                float resizeRatio = 1.0f;
-                                Rect bounds = new Rect();
-                                bounds.left = (int) (ret.getLeft() * resizeRatio);
-                                bounds.top = (int) (ret.getTop() * resizeRatio);
-                                bounds.right = (int) (ret.getRight() * resizeRatio);
-                                bounds.bottom = (int) (ret.getBottom() * resizeRatio);
-
-                                Canvas canvas = new Canvas(mCroppedBitmap);
-                                canvas.drawRect(bounds, mFaceLandmardkPaint);
-
-
-                                // Draw landmark
-                                ArrayList<Point> landmarks = ret.getFaceLandmarks();
-
-                                int counter = 0;
-                                for (Point point : landmarks) {
-                                    int pointX = (int) (point.x * resizeRatio);
-                                    int pointY = (int) (point.y * resizeRatio);
-                                    canvas.drawCircle(pointX, pointY, 2, mFaceLandmardkPaint);
-
-                                    counter = counter + 1;
-                                }
-
-
-                                Rect listforehead = new Rect();
-                                listforehead.left = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) - 17));
-                                listforehead.top = (int) ((ret.getTop() - 5) * resizeRatio);
-                                listforehead.right = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) + 17));
-                                listforehead.bottom = (int) ((ret.getTop() + 17 )* resizeRatio);
-
-                                canvas.drawRect(listforehead, mFaceLandmardkPaint);
+                        try {
+                            if (!new File(Constants.getFaceShapeModelPath()).exists()) {
+                                mTransparentTitleView.setText("Copying landmark model to " + Constants.getFaceShapeModelPath());
+                                FileUtils.copyFileFromRawToOthers(mContext, R.raw.shape_predictor_68_face_landmarks, Constants.getFaceShapeModelPath());
+                            }
 
-                                Rect listleftface = new Rect();
-                                listleftface.left = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) - 50));
-                                listleftface.top = (int) ((ret.getTop()+60) * resizeRatio);
-                                listleftface.right = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) - 20));
-                                listleftface.bottom = (int) ((ret.getTop() + 85 )* resizeRatio);
+                            long startTime = System.currentTimeMillis();
+                            List<VisionDetRet> results;
+                            synchronized (OnGetImageListener.this) {
+                                results = mFaceDet.detect(mCroppedBitmap);
+                            }
+                            long endTime = System.currentTimeMillis();
+                            //mTransparentTitleView.setText("Time cost: " + String.valueOf((endTime - startTime) / 1000f) + " sec");
+                            // Draw on bitmap
+                            if (results == null || results.isEmpty()) {
+                                // the next face starts new windows rather than continue this one
+                                resetPulse();
+                                mResampler.reset();
+                                mPatchResampler.reset();
+                            }
+                            if (results != null) {
 
-                                canvas.drawRect(listleftface, mFaceLandmardkPaint);
+                                String fileTitle = dateFormat.format(new Date()); // Find todays date
+                                writeToFile(fileTitle, "");
 
-                                Rect listrightface = new Rect();
-                                listrightface.left = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) + 20));
-                                listrightface.top = (int) ((ret.getTop()+60) * resizeRatio);
-                                listrightface.right = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) + 50));
-                                listrightface.bottom = (int) ((ret.getTop() + 85 )* resizeRatio);
+                                for (final VisionDetRet ret : results) {
+                                    float resizeRatio = 1.0f;
+                                    Rect bounds = new Rect();
+                                    bounds.left = (int) (ret.getLeft() * resizeRatio);
+                                    bounds.top = (int) (ret.getTop() * resizeRatio);
+                                    bounds.right = (int) (ret.getRight() * resizeRatio);
+                                    bounds.bottom = (int) (ret.getBottom() * resizeRatio);
 
-                                canvas.drawRect(listrightface, mFaceLandmardkPaint);
+                                    Canvas canvas = new Canvas(mCroppedBitmap);
+                                    canvas.drawRect(bounds, mFaceLandmardkPaint);
 
-                                ArrayList<Tuple> avearray2 = new ArrayList<>();
-                                ArrayList<Tuple>  allPoints = new ArrayList<>();
 
-                                int a1 = ((listforehead.left + listforehead.right)/2);
-                                int b1 = ((listleftface.left + listleftface.right)/2);
-                                int c1 = ((listrightface.left + listrightface.right)/2);
+                                    // Draw landmark
+                                    ArrayList<Point> landmarks = ret.getFaceLandmarks();
 
-                                int a3 = ((listforehead.bottom + listforehead.top)/2);
-                                int b3 = ((listleftface.bottom + listleftface.top)/2);
-                                int c3 = ((listrightface.bottom + listrightface.top)/2);
+                                    int counter = 0;
+                                    for (Point point : landmarks) {
+                                        int pointX = (int) (point.x * resizeRatio);
+                                        int pointY = (int) (point.y * resizeRatio);
+                                        canvas.drawCircle(pointX, pointY, 2, mFaceLandmardkPaint);
 
-                                canvas.drawCircle(a1, a3, 3, mFaceKalmanPaint);
-                                canvas.drawCircle(b1, b3, 3, mFaceKalmanPaint);
-                                canvas.drawCircle(c1, c3, 3, mFaceKalmanPaint);
+                                        counter = counter + 1;
+                                    }
 
-                                int a2, b2,c2;
 
-                                for (int y1 = 0;  y1 <5; y1++)
-                                {
-                                    a2 = ((listforehead.bottom + listforehead.top)/2) + y1;
-                                    b2 = ((listleftface.bottom + listleftface.top)/2) + y1;
-                                    c2 = ((listrightface.bottom + listrightface.top)/2) + y1;
+                                    Rect listforehead = new Rect();
+                                    listforehead.left = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) - 17));
+                                    listforehead.top = (int) ((ret.getTop() - 5) * resizeRatio);
+                                    listforehead.right = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) + 17));
+                                    listforehead.bottom = (int) ((ret.getTop() + 17 )* resizeRatio);
 
-                                    Tuple tup1 = new Tuple(a1, a2);
-                                    Tuple tup2 = new Tuple(b1, b2);
-                                    Tuple tup3 = new Tuple(c1, c2);
+                                    canvas.drawRect(listforehead, mFaceLandmardkPaint);
 
-                                    allPoints.add(tup1);
-                                    allPoints.add(tup2);
-                                    allPoints.add(tup3);
+                                    Rect listleftface = new Rect();
+                                    listleftface.left = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) - 50));
+                                    listleftface.top = (int) ((ret.getTop()+60) * resizeRatio);
+                                    listleftface.right = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) - 20));
+                                    listleftface.bottom = (int) ((ret.getTop() + 85 )* resizeRatio);
 
-                                }
+                                    canvas.drawRect(listleftface, mFaceLandmardkPaint);
 
-//                                Tuple topRight = new Tuple(bounds.top, bounds.right);
-//                                Tuple bottomRight = new Tuple(bounds.bottom, bounds.right);
-//                                Tuple topLeft = new Tuple(bounds.top, bounds.left);
-//                                Tuple bottomLeft = new Tuple(bounds.bottom, bounds.left);
+                                    Rect listrightface = new Rect();
+                                    listrightface.left = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) + 20));
+                                    listrightface.top = (int) ((ret.getTop()+60) * resizeRatio);
+                                    listrightface.right = (int) (ret.getLeft() + (((ret.getRight() - ret.getLeft()) / 2.0f) + 50));
+                                    listrightface.bottom = (int) ((ret.getTop() + 85 )* resizeRatio);
 
+                                    canvas.drawRect(listrightface, mFaceLandmardkPaint);
 
-                                ArrayList<Point> threekeypoints = new ArrayList<>();
+                                    ArrayList<Tuple> avearray2 = new ArrayList<>();
+                                    ArrayList<Tuple>  allPoints = new ArrayList<>();
 
-                                Point foreheadpoint = new Point(a1, a3);
-                                Point leftfacepoint = new Point(b1, b3);
-                                Point rightfacepoint = new Point(c1, c3);
+                                    int a1 = ((listforehead.left + listforehead.right)/2);
+                                    int b1 = ((listleftface.left + listleftface.right)/2);
+                                    int c1 = ((listrightface.left + listrightface.right)/2);
 
-                                threekeypoints.add(foreheadpoint);
-                                threekeypoints.add(leftfacepoint);
-                                threekeypoints.add(rightfacepoint);
+                                    int a3 = ((listforehead.bottom + listforehead.top)/2);
+                                    int b3 = ((listleftface.bottom + listleftface.top)/2);
+                                    int c3 = ((listrightface.bottom + listrightface.top)/2);
 
-                                int foreheadw = abs((int) (listforehead.left - listforehead.right) / 4);
-                                int leftfacew = abs((int) (listleftface.left - listleftface.right) / 4);
-                                int rightfacew = abs((int) (listrightface.left - listrightface.right) / 4);
+                                    canvas.drawCircle(a1, a3, 3, mFaceKalmanPaint);
+                                    canvas.drawCircle(b1, b3, 3, mFaceKalmanPaint);
+                                    canvas.drawCircle(c1, c3, 3, mFaceKalmanPaint);
 
-                                int foreheadh = abs((int) (listforehead.top - listforehead.bottom) / 4);
-                                int leftfaceh = abs((int) (listleftface.top - listleftface.bottom) / 4);
-                                int rightfaceh = abs((int) (listrightface.top - listrightface.bottom) / 4);
+                                    int a2, b2,c2;
 
+                                    for (int y1 = 0;  y1 <5; y1++)
+                                    {
+                                        a2 = ((listforehead.bottom + listforehead.top)/2) + y1;
+                                        b2 = ((listleftface.bottom + listleftface.top)/2) + y1;
+                                        c2 = ((listrightface.bottom + listrightface.top)/2) + y1;
 
-                                List<Float> Normalizedlist = new ArrayList<>();
+                                        Tuple tup1 = new Tuple(a1, a2);
+                                        Tuple tup2 = new Tuple(b1, b2);
+                                        Tuple tup3 = new Tuple(c1, c2);
 
+                                        allPoints.add(tup1);
+                                        allPoints.add(tup2);
+                                        allPoints.add(tup3);
 
-                                for (int i = a1-foreheadw; i < (a1 + foreheadw); i++){
-                                    for (int j=a3-foreheadh; j < (a3 + foreheadh); j++){
-                                        int colorbit = mCroppedBitmap.getPixel(i,j);
-                                        int red = Color.red(colorbit);
-                                        int blue = Color.blue(colorbit);
-                                        int green = Color.green(colorbit);
-                                        float[] hsv = new float[3];
-                                        Color.RGBToHSV(red, green, blue, hsv);
-                                        //Log.d(TAG, String.format("HUE (%f)", hsv[0]));
-                                        Normalizedlist.add(hsv[0]);
                                     }
-                                }
 
-                                for (int i = b1-foreheadw; i < (b1 + foreheadw); i++){
-                                    for (int j=b3-foreheadh; j < (b3 + foreheadh); j++){
-                                        int colorbit = mCroppedBitmap.getPixel(i,j);
-                                        int red = Color.red(colorbit);
-                                        int blue = Color.blue(colorbit);
-                                        int green = Color.green(colorbit);
-                                        float[] hsv = new float[3];
-                                        Color.RGBToHSV(red, green, blue, hsv);
-                                        //Log.d(TAG, String.format("HUE (%f)", hsv[0]));
-                                        Normalizedlist.add(hsv[0]);
+    //                                Tuple topRight = new Tuple(bounds.top, bounds.right);
+    //                                Tuple bottomRight = new Tuple(bounds.bottom, bounds.right);
+    //                                Tuple topLeft = new Tuple(bounds.top, bounds.left);
+    //                                Tuple bottomLeft = new Tuple(bounds.bottom, bounds.left);
+
+
+                                    ArrayList<Point> threekeypoints = new ArrayList<>();
+
+                                    Point foreheadpoint = new Point(a1, a3);
+                                    Point leftfacepoint = new Point(b1, b3);
+                                    Point rightfacepoint = new Point(c1, c3);
+
+                                    threekeypoints.add(foreheadpoint);
+                                    threekeypoints.add(leftfacepoint);
+                                    threekeypoints.add(rightfacepoint);
+
+                                    int foreheadw = abs((int) (listforehead.left - listforehead.right) / 4);
+                                    int leftfacew = abs((int) (listleftface.left - listleftface.right) / 4);
+                                    int rightfacew = abs((int) (listrightface.left - listrightface.right) / 4);
+
+                                    int foreheadh = abs((int) (listforehead.top - listforehead.bottom) / 4);
+                                    int leftfaceh = abs((int) (listleftface.top - listleftface.bottom) / 4);
+                                    int rightfaceh = abs((int) (listrightface.top - listrightface.bottom) / 4);
+
+
+                                    // the forehead ROI reaches above the detection box
+                                    mFaceRegion.set(bounds);
+                                    mFaceRegion.union(listforehead);
+                                    mFaceRegion.union(listleftface);
+                                    mFaceRegion.union(listrightface);
+                                    mRoiSampler.integrate(mFaceRegion, mFaceIntegral);
+
+                                    if (STREAMING_PULSE) {
+                                        // a patch clipped away at the frame edge has no mean this
+                                        // frame; skip the frame rather than push its previous value
+                                        if (mPatchGrid.sample(mRoiSampler, mFaceIntegral, bounds, mPatchSample)
+                                                && mPatchResampler.push(mPatchSample, frameTimestamp)) {
+                                            // first frame, or the face was missing for too long
+                                            resetPulse();
+                                        }
+                                        while (mPatchResampler.poll(mPatchGridSample) != UniformResampler.NO_SAMPLE) {
+                                            mSlidingDft.push(mPatchGrid.push(mPatchGridSample));
+                                            mSampleCount++;
+                                        }
+                                    } else {
+                                        // likewise for the three ROIs
+                                        if (sampleRoi(0, a1 - foreheadw, a3 - foreheadh, a1 + foreheadw, a3 + foreheadh)
+                                                && sampleRoi(1, b1 - foreheadw, b3 - foreheadh, b1 + foreheadw, b3 + foreheadh)
+                                                && sampleRoi(2, c1 - foreheadw, c3 - foreheadh, c1 + foreheadw, c3 + foreheadh)) {
+                                            if (mResampler.push(mRoiSample, frameTimestamp)) {
+                                                // first frame, or the ROIs were missing for too long
+                                                resetPulse();
+                                            }
+                                            if (LOG_ROI_TRACE) {
+                                                Log.d(TAG, "RoiTrace: " + frameTimestamp + "," + mRoiSample[0]
+                                                        + "," + mRoiSample[1] + "," + mRoiSample[2]);
+                                            }
+                                        }
+
+                                        long gridTimestamp;
+                                        while ((gridTimestamp = mResampler.poll(mGridSample)) != UniformResampler.NO_SAMPLE) {
+                                            mPulseEstimator.push(mGridSample, gridTimestamp);
+                                            mSampleCount++;
+                                        }
                                     }
                                 }
 
-                                for (int i = c1-foreheadw; i < (c1 + foreheadw); i++){
-                                    for (int j=c3-foreheadh; j < (c3 + foreheadh); j++){
-                                        int colorbit = mCroppedBitmap.getPixel(i,j);
-                                        int red = Color.red(colorbit);
-                                        int blue = Color.blue(colorbit);
-                                        int green = Color.green(colorbit);
-                                        float[] hsv = new float[3];
-                                        Color.RGBToHSV(red, green, blue, hsv);
-                                        //Log.d(TAG, String.format("HUE (%f)", hsv[0]));
-                                        Normalizedlist.add(hsv[0]);
+                                if (mSampleCount >= mNextEstimateAt) {
+                                    double pulseRate = STREAMING_PULSE
+                                            ? mSlidingDft.getPeakFrequency() * 60.0
+                                            : mPulseEstimator.estimate();
+                                    Log.d(TAG, String.format("Pulse rate (%f)", pulseRate));
+                                    mTransparentTitleView.setText(String.format("Pulse rate: %.1f bpm", pulseRate));
+
+                                    // a slow frame can deliver several hops of grid samples at
+                                    // once; estimate once and stay on the hop grid
+                                    while (mNextEstimateAt <= mSampleCount) {
+                                        mNextEstimateAt += ESTIMATE_HOP;
                                     }
-                                }
-                                float sum = 0;
-                                for(int i = 0; i < Normalizedlist.size(); i++){
-                                    sum += Normalizedlist.get(i);
-                                }
-                                int totalmean = (int) (sum / Normalizedlist.size());
-                                meanlist.add(totalmean);
-
-
-                                if(meanlist.size() >= 150 + cutlow){
-                                    int windowstart = meanlist.size() - 150;
-                                    List<Integer> window = new ArrayList<>(meanlist.subList(windowstart, windowstart + 150));
-                                    List<Double> doubleWindow = new ArrayList<>();
-
-                                    int wsum = 0;
-                                    float wmean;
-                                    double sdtemp = 0;
-
-                                    for(int i = 0; i < window.size(); i++){
-                                        wsum += window.get(i);
-                                    }
-                                    wmean = (float) (wsum / window.size());
-
-                                    for(int i = 0; i < window.size(); i++){
-                                        double squrDiffToMean = Math.pow(window.get(i) - wmean, 2);
-                                        sdtemp += squrDiffToMean;
-                                    }
-
-                                    double meanOfDiffs = sdtemp / (double) (window.size());
-                                    double stdv = Math.sqrt(meanOfDiffs);
-
-                                    for(int i = 0; i < window.size(); i++){
-                                        double updateVal = (((double)(window.get(i)) - wmean) / stdv);
-                                        doubleWindow.add(updateVal);
-                                    }
-
-                                    double[] window = new double[150];
-
-                                    if (! Python.isStarted()) {
-                                        Python.start(new AndroidPlatform(getApplicationContext()));
-                                    }
-                                    Python py = Python.getInstance();
-                                    PyObject NS = py.getModule("static_proxy.PyMathLib").get("NpScipy");
-                                    PyObject ns_po = NS.call();
-                                    NpScipy npScipy = ns_po.toJava(NpScipy.class);
-
-                                    double[][] detrend = npScipy.get_detrend(window,true);
-                                    double fs = 30.0;
-                                    double lowcut = 0.75;
-                                    double highcut = 4.0;
-                                    int order = 4;
-                                    double[][] y = npScipy.butter_bandpass_filter(detrend, lowcut,highcut, fs, order);
-                                    double[][] powerSpec = npScipy.get_powerSpec(y, true);
-                                    double[] freq = npScipy.fftfreq(150, (1.0/30));
-
-                                    FastICA ica = new FastICA();
-
-
-
-
-
-                                    Log.d(TAG, String.format("Kan : (%f)", doubleWindow.get(1)));
-
-
-                                    cutlow = cutlow + 5;
 
                                     String timeStamp = dateFormat.format(new Date()); // Find todays date
                                     writeToFile(fileTitle, timeStamp+","+pulseRate+"\n");
 
-
-
-
-
                                 }
-
-
-
                             }
+                        } finally {
+                            mWindow.setRGBBitmap(mCroppedBitmap);
+                            mIsComputing = false;
                         }
-                        mWindow.setRGBBitmap(mCroppedBitmap);
-                        mIsComputing = false;
                     }
                 });
 
         Trace.endSection();
     }
+
+    /**
+     * Drops the ROI window, the patch filters and spectra, and the hop counters, so the next
+     * estimate waits for a full window of new grid samples.
+     */
+    private void resetPulse() {
+        mPulseEstimator.reset();
+        mPatchGrid.reset();
+        mSlidingDft.reset();
+        mSampleCount = 0;
+        mNextEstimateAt = WINDOW_SIZE;
+    }
+
+    /**
+     * Reads the mean hue of one ROI of the current face into mRoiSample.
+     * @return false, if the ROI holds no pixel of the frame
+     */
+    private boolean sampleRoi(int roi, int left, int top, int right, int bottom) {
+        mSampleRect.set(left, top, right, bottom);
+        if (mRoiSampler.sample(mFaceIntegral, mSampleRect, mRoiMeans) == 0) {
+            return false;
+        }
+        mRoiSample[roi] = mRoiMeans[YuvRoiSampler.HUE];
+        return true;
+    }
+
     public void writeToFile(String fileName, String body)
     {
         FileOutputStream fos = null;
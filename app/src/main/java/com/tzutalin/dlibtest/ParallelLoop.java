@@ -0,0 +1,139 @@
+package com.tzutalin.dlibtest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the iterations of a loop on a fixed pool of worker threads.
+ * <p>
+ * The loop is split by the caller into a fixed number of independent chunks,
+ * which the workers and the calling thread claim one at a time. Which thread
+ * runs a chunk is not deterministic, so bodies must only write to state owned
+ * by their chunk; a caller that needs a sum keeps one partial per chunk and
+ * adds them in chunk order afterwards, which makes the result independent of
+ * the number of threads. ForkJoinPool work stealing is not used,
+ * as it needs API level 21.
+ */
+public final class ParallelLoop {
+
+    /**
+     * One loop iteration.
+     */
+    public interface Body {
+        /**
+         * @param index the chunk index, from 0 to the chunk count - 1
+         */
+        void run(int index);
+    }
+
+    private static ParallelLoop sDefault;
+
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a loop runner with its own daemon worker threads.
+     * @param parallelism the number of threads working on a loop, including the caller
+     */
+    public ParallelLoop(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        if (parallelism == 1) {
+            executor = null;
+        } else {
+            executor = Executors.newFixedThreadPool(parallelism - 1, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ParallelLoop-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the shared runner, using every available processor.
+     * @return the default loop runner
+     */
+    public static synchronized ParallelLoop getDefault() {
+        if (sDefault == null) {
+            sDefault = new ParallelLoop(Runtime.getRuntime().availableProcessors());
+        }
+        return sDefault;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Runs <code>body</code> for every chunk index and waits for all of them.
+     * @param chunks the number of chunks
+     * @param body the loop body
+     */
+    public void run(final int chunks, final Body body) {
+        int workers = Math.min(parallelism, chunks) - 1;
+        if (workers <= 0) {
+            for (int i = 0; i < chunks; i++) {
+                body.run(i);
+            }
+            return;
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(workers);
+        final Throwable[] failure = new Throwable[1];
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    drain(next, chunks, body, failure);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        for (int i = 0; i < workers; i++) {
+            executor.execute(worker);
+        }
+        drain(next, chunks, body, failure);
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the loop", e);
+        }
+        synchronized (failure) {
+            if (failure[0] instanceof RuntimeException) {
+                throw (RuntimeException) failure[0];
+            } else if (failure[0] instanceof Error) {
+                throw (Error) failure[0];
+            }
+        }
+    }
+
+    private static void drain(AtomicInteger next, int chunks, Body body, Throwable[] failure) {
+        int i;
+        while ((i = next.getAndIncrement()) < chunks) {
+            try {
+                body.run(i);
+            } catch (Throwable t) {
+                synchronized (failure) {
+                    if (failure[0] == null) {
+                        failure[0] = t;
+                    }
+                }
+                // skip the remaining chunks
+                next.set(chunks);
+            }
+        }
+    }
+}
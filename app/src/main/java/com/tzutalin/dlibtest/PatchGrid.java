@@ -0,0 +1,282 @@
+package com.tzutalin.dlibtest;
+
+import android.graphics.Rect;
+
+/**
+ * Splits the face into a grid of skin patches and fuses their signals,
+ * weighting each patch by how clearly it shows a pulse.
+ * <p>
+ * Per frame, {@link #sample(YuvRoiSampler, IntegralImage, Rect, double[])}
+ * reads the mean colour of every patch from summed-area tables of the face, so
+ * the cost of adding patches is a few lookups each, not another pass over the
+ * pixels. Per sample of the uniform grid, {@link #push(double[])} band-passes
+ * every patch, keeps its last window of filtered values in a bounded
+ * {@link SignalRingBuffer} of its own and updates a sliding DFT of the
+ * heart-rate band. A patch's signal-to-noise ratio is the power of the peak
+ * bin and its two neighbours over the power of the rest of the band, smoothed
+ * exponentially over time. The fused sample is the SNR-weighted mean of the
+ * filtered values of the best patches; until the first window is full, every
+ * patch gets the same weight.
+ * <p>
+ * Patches over eyes, brows, hair or background pick up motion and lighting
+ * changes rather than the pulse, so their SNR stays low and they drop out of
+ * the fusion by themselves. Instances are not thread safe.
+ */
+public class PatchGrid {
+
+    public static final double DEFAULT_SNR_SMOOTHING = 0.05;
+
+    private final int rows;
+    private final int cols;
+    private final int patches;
+    private final ButterworthBandpass[] bandpass;
+    private final SlidingDft[] spectrum;
+    private final SignalRingBuffer[] signals;
+    private final double[] filtered;
+    private final double[] snr;
+    private final double[] means = new double[ColorStats.CHANNELS];
+    private final boolean[] selected;
+    private final Rect patch = new Rect();
+
+    private int channel = ColorStats.HUE;
+    private int fusedPatches;
+    private double snrSmoothing = DEFAULT_SNR_SMOOTHING;
+
+    /**
+     * Creates a grid of <code>rows</code> x <code>cols</code> patches.
+     * @param rows the number of patch rows
+     * @param cols the number of patch columns
+     * @param n the window length of the per-patch buffers and spectra, in samples
+     * @param fs the sampling rate in Hz
+     * @param lowcut the lower edge of the heart-rate band in Hz
+     * @param highcut the upper edge of the heart-rate band in Hz
+     * @param order the order of the per-patch band-pass filters
+     */
+    public PatchGrid(int rows, int cols, int n, double fs, double lowcut, double highcut, int order) {
+        if (rows < 1 || cols < 1) {
+            throw new IllegalArgumentException("grid must have at least one patch: " + rows + "x" + cols);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.patches = rows * cols;
+        this.fusedPatches = (patches + 1) / 2;
+        bandpass = new ButterworthBandpass[patches];
+        spectrum = new SlidingDft[patches];
+        signals = new SignalRingBuffer[patches];
+        for (int p = 0; p < patches; p++) {
+            // the designer cache hands every patch the same sections
+            bandpass[p] = new ButterworthBandpass(order, lowcut, highcut, fs);
+            spectrum[p] = new SlidingDft(n, fs, lowcut, highcut);
+            signals[p] = new SignalRingBuffer(1, n);
+        }
+        filtered = new double[patches];
+        snr = new double[patches];
+        selected = new boolean[patches];
+    }
+
+    /**
+     * Selects the colour channel each patch contributes.
+     * @param channel one of the {@link ColorStats} channels; hue by default
+     */
+    public void setChannel(int channel) {
+        if (channel < 0 || channel >= ColorStats.CHANNELS) {
+            throw new IllegalArgumentException("unknown channel: " + channel);
+        }
+        this.channel = channel;
+    }
+
+    public int getChannel() {
+        return channel;
+    }
+
+    /**
+     * Sets how many of the patches with the highest SNR are fused.
+     * @param count the number of fused patches, from 1 to the patch count;
+     * half of the patches by default
+     */
+    public void setFusedPatches(int count) {
+        if (count < 1 || count > patches) {
+            throw new IllegalArgumentException("fused patches must be in [1, " + patches + "]: " + count);
+        }
+        this.fusedPatches = count;
+    }
+
+    public int getFusedPatches() {
+        return fusedPatches;
+    }
+
+    /**
+     * Sets the weight of the newest SNR value in the running estimate.
+     * @param smoothing the exponential smoothing factor, in (0, 1]
+     */
+    public void setSnrSmoothing(double smoothing) {
+        if (!(smoothing > 0.0 && smoothing <= 1.0)) {
+            throw new IllegalArgumentException("smoothing must be in (0, 1]: " + smoothing);
+        }
+        this.snrSmoothing = smoothing;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getPatchCount() {
+        return patches;
+    }
+
+    /**
+     * Returns the rectangle of a patch; patches tile the face row by row.
+     * @param index the patch index, row * cols + col
+     * @param face the face rectangle
+     * @param res the destination
+     * @return res
+     */
+    public Rect getPatch(int index, Rect face, Rect res) {
+        int row = index / cols;
+        int col = index % cols;
+        res.set(face.left + face.width() * col / cols,
+                face.top + face.height() * row / rows,
+                face.left + face.width() * (col + 1) / cols,
+                face.top + face.height() * (row + 1) / rows);
+        return res;
+    }
+
+    /**
+     * Reads the mean of the selected channel over every patch of the current frame.
+     * @param sampler the sampler of the current frame
+     * @param integral tables covering <code>face</code>, built by
+     * {@link YuvRoiSampler#integrate(Rect, IntegralImage)}
+     * @param face the face rectangle in detector bitmap coordinates
+     * @param res the destination, {@link #getPatchCount()} values; a patch
+     * without pixels keeps its previous value
+     * @return false, if some patch held no pixel of the frame
+     */
+    public boolean sample(YuvRoiSampler sampler, IntegralImage integral, Rect face, double[] res) {
+        boolean complete = true;
+        for (int p = 0; p < patches; p++) {
+            if (sampler.sample(integral, getPatch(p, face, patch), means) > 0) {
+                res[p] = means[channel];
+            } else {
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Adds one sample of every patch and returns the fused, band-passed sample.
+     * @param sample the patch values, {@link #getPatchCount()} long
+     * @return the SNR-weighted mean of the filtered values of the best patches
+     */
+    public double push(double[] sample) {
+        for (int p = 0; p < patches; p++) {
+            filtered[p] = bandpass[p].filter(sample[p]);
+            spectrum[p].push(filtered[p]);
+            signals[p].push(filtered[p]);
+            if (spectrum[p].isReady()) {
+                snr[p] += snrSmoothing * (bandSnr(spectrum[p]) - snr[p]);
+            }
+        }
+
+        if (!spectrum[0].isReady()) {
+            double sum = 0.0;
+            for (int p = 0; p < patches; p++) {
+                sum += filtered[p];
+            }
+            return sum / patches;
+        }
+
+        selectBest();
+        double sum = 0.0;
+        double weights = 0.0;
+        for (int p = 0; p < patches; p++) {
+            if (selected[p]) {
+                sum += snr[p] * filtered[p];
+                weights += snr[p];
+            }
+        }
+        return weights > 0.0 ? sum / weights : 0.0;
+    }
+
+    /**
+     * Marks the {@link #getFusedPatches()} patches with the highest SNR.
+     */
+    private void selectBest() {
+        for (int p = 0; p < patches; p++) {
+            selected[p] = false;
+        }
+        for (int k = 0; k < fusedPatches; k++) {
+            int best = -1;
+            for (int p = 0; p < patches; p++) {
+                if (!selected[p] && (best < 0 || snr[p] > snr[best])) {
+                    best = p;
+                }
+            }
+            selected[best] = true;
+        }
+    }
+
+    /**
+     * Power of the peak bin and its neighbours over the power of the other
+     * bins of the band.
+     */
+    private static double bandSnr(SlidingDft dft) {
+        int peak = dft.getPeakBin();
+        double signal = 0.0;
+        double noise = 0.0;
+        for (int b = 0; b < dft.getBinCount(); b++) {
+            if (Math.abs(b - peak) <= 1) {
+                signal += dft.getPower(b);
+            } else {
+                noise += dft.getPower(b);
+            }
+        }
+        return noise > 0.0 ? signal / noise : 0.0;
+    }
+
+    /**
+     * Returns the running SNR estimate of a patch.
+     * @param index the patch index
+     * @return the smoothed ratio of peak to off-peak power, 0 before the first full window
+     */
+    public double getSnr(int index) {
+        return snr[index];
+    }
+
+    /**
+     * Returns the band-passed value of a patch from the last {@link #push(double[])}.
+     * @param index the patch index
+     * @return the newest filtered sample of the patch
+     */
+    public double getFiltered(int index) {
+        return filtered[index];
+    }
+
+    /**
+     * Returns the filtered history of a patch, oldest sample first.
+     * @param index the patch index
+     * @return the patch's single-channel buffer of the last <code>n</code>
+     * filtered samples; not a copy
+     */
+    public SignalRingBuffer getSignal(int index) {
+        return signals[index];
+    }
+
+    /**
+     * Clears the filters, spectra, buffers and SNR estimates, e.g. when the
+     * face is lost.
+     */
+    public void reset() {
+        for (int p = 0; p < patches; p++) {
+            bandpass[p].reset();
+            spectrum[p].reset();
+            signals[p].clear();
+            filtered[p] = 0.0;
+            snr[p] = 0.0;
+        }
+    }
+}
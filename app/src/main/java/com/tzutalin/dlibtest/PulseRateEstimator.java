@@ -0,0 +1,47 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Streaming heart-rate estimator fed with one colour sample per frame.
+ * <p>
+ * Implementations differ only in where the maths runs (Python, plain Java,
+ * in-tree ICA), so the camera code can pick the fastest backend for a device
+ * without changing anything else.
+ */
+public interface PulseRateEstimator {
+
+    /**
+     * Returns the number of values each pushed sample holds, e.g. one mean
+     * per ROI.
+     * @return the channel count
+     */
+    int getChannelCount();
+
+    /**
+     * Appends one sample. Samples must already lie on a uniform grid at the
+     * estimator's sampling rate; feed camera frames through a
+     * {@link UniformResampler}. A timestamp more than one and a half periods
+     * after the previous one means grid samples are missing, and the window
+     * restarts from this sample rather than join the two stretches.
+     * @param sample one value per channel
+     * @param timestampNanos the grid time of the sample, as returned by
+     * {@link UniformResampler#poll(double[])}
+     */
+    void push(double[] sample, long timestampNanos);
+
+    /**
+     * Tells whether enough samples have been pushed for {@link #estimate()}.
+     * @return true, if a full window is available
+     */
+    boolean isReady();
+
+    /**
+     * Estimates the pulse rate over the most recent window.
+     * @return the pulse rate in beats per minute, or <code>Double.NaN</code> if not ready
+     */
+    double estimate();
+
+    /**
+     * Drops all pushed samples.
+     */
+    void reset();
+}
@@ -0,0 +1,51 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Creates {@link PulseRateEstimator} backends by name.
+ */
+public final class PulseRateEstimators {
+
+    public enum Backend {
+        /** numpy / scipy / sklearn through Chaquopy. */
+        NPSCIPY,
+        /** Band-pass and FFT in plain Java on the channel average. */
+        JAVA,
+        /** In-tree {@link FastIca} over the channels, then the Java spectral path. */
+        FAST_ICA
+    }
+
+    /**
+     * The backend the camera pipeline uses. The Java path keeps each hop in the
+     * JVM and agrees with the Python one to within a bin, so Python is only
+     * started when this is {@link Backend#NPSCIPY}.
+     */
+    public static final Backend DEFAULT_BACKEND = Backend.JAVA;
+
+    private PulseRateEstimators() {
+    }
+
+    /**
+     * Creates an estimator.
+     * @param backend the implementation to use
+     * @param channels the number of values per sample
+     * @param windowSize the window length in samples
+     * @param fs the sampling rate in Hz
+     * @param lowcut the lowest pulse frequency in Hz
+     * @param highcut the highest pulse frequency in Hz
+     * @param order the band-pass order
+     * @return the new estimator
+     */
+    public static PulseRateEstimator create(Backend backend, int channels, int windowSize, double fs,
+                                            double lowcut, double highcut, int order) {
+        switch (backend) {
+            case NPSCIPY:
+                return new NpScipyPulseRateEstimator(channels, windowSize, fs, lowcut, highcut, order);
+            case JAVA:
+                return new JavaPulseRateEstimator(channels, windowSize, fs, lowcut, highcut, order);
+            case FAST_ICA:
+                return new FastIcaPulseRateEstimator(channels, windowSize, fs, lowcut, highcut, order);
+            default:
+                throw new IllegalArgumentException("unknown backend " + backend);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.tzutalin.dlibtest;
+
+import android.content.Context;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.chaquo.python.PyObject;
+import com.chaquo.python.Python;
+import com.chaquo.python.android.AndroidPlatform;
+
+import static_proxy.PyMathLib.NpScipy;
+import timber.log.Timber;
+
+/**
+ * Owns the Python interpreter and the single {@link NpScipy} instance the app uses.
+ * <p>
+ * {@link #startAsync(Context)} boots the interpreter on a background thread when the
+ * application starts, so the first heart-rate window does not stall on it.
+ * {@link #getNpScipy()} waits for that boot if it is still running and then always
+ * returns the same instance.
+ */
+public final class PyMathBridge {
+    private static final String TAG = PyMathBridge.class.getSimpleName();
+
+    /** Indices into the array returned by <code>NpScipy.estimate_pulse</code>. */
+    public static final int RESULT_PEAK_FREQUENCY = 0;
+    public static final int RESULT_PEAK_POWER = 1;
+    public static final int RESULT_SNR = 2;
+    public static final int RESULT_LENGTH = 3;
+
+    private static Context sContext;
+    private static NpScipy sNpScipy;
+
+    private PyMathBridge() {
+    }
+
+    /**
+     * Starts Python and creates the shared NpScipy instance on a background thread.
+     * @param context any context; only its application context is kept
+     */
+    public static synchronized void startAsync(Context context) {
+        if (sContext != null) {
+            return;
+        }
+        sContext = context.getApplicationContext();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                getNpScipy();
+                Timber.tag(TAG).d("Python ready after %d ms", System.currentTimeMillis() - start);
+            }
+        }, "PyMathBridge-start");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Returns the shared NpScipy instance, starting Python first if needed.
+     * @return the cached instance
+     */
+    public static synchronized NpScipy getNpScipy() {
+        if (sNpScipy == null) {
+            if (!Python.isStarted()) {
+                if (sContext == null) {
+                    throw new IllegalStateException("PyMathBridge.startAsync has not been called");
+                }
+                Python.start(new AndroidPlatform(sContext));
+            }
+            PyObject cls = Python.getInstance().getModule("static_proxy.PyMathLib").get("NpScipy");
+            sNpScipy = cls.call().toJava(NpScipy.class);
+        }
+        return sNpScipy;
+    }
+
+    /**
+     * Allocates a direct, native-order buffer that numpy can wrap without copying.
+     * @param doubles the number of doubles the buffer holds
+     * @return the buffer
+     */
+    public static ByteBuffer allocateDoubles(int doubles) {
+        return ByteBuffer.allocateDirect(doubles * 8).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Runs <code>NpScipy.estimate_pulse</code> on buffers from {@link #allocateDoubles(int)}.
+     * @param window the window samples, read from index 0
+     * @param n the number of samples in <code>window</code>
+     * @param result receives {@link #RESULT_LENGTH} doubles, see the <code>RESULT_</code> indices
+     * @param fs the sampling rate in Hz
+     * @param lowcut the lower band edge in Hz
+     * @param highcut the upper band edge in Hz
+     * @param order the band-pass order
+     */
+    public static void estimatePulse(ByteBuffer window, int n, ByteBuffer result,
+                                     double fs, double lowcut, double highcut, int order) {
+        getNpScipy().estimate_pulse_buffer(window, n, result, fs, lowcut, highcut, order);
+    }
+}
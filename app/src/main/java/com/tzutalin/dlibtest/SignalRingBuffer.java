@@ -0,0 +1,219 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Fixed-capacity history of multi-channel samples backed by a single
+ * <code>double[]</code>. Once full, every push overwrites the oldest sample,
+ * so memory stays constant however long the session runs.
+ * <p>
+ * Samples are addressed chronologically: index 0 is the oldest sample still
+ * held, <code>size() - 1</code> the newest. Windows can be read through a
+ * {@link Window} view without copying, or snapshotted into a caller-owned
+ * array. Instances are not thread safe.
+ */
+public class SignalRingBuffer {
+
+    private final int channels;
+    private final int capacity;
+    private final double[] data;    // channel-major: channel c occupies [c * capacity, (c + 1) * capacity)
+    private int head = 0;           // slot the next sample is written to
+    private int size = 0;
+    private long totalCount = 0;
+
+    /**
+     * Creates an empty buffer.
+     * @param channels the number of values per sample
+     * @param capacity the maximum number of samples held
+     */
+    public SignalRingBuffer(int channels, int capacity) {
+        if (channels < 1 || capacity < 1) {
+            throw new IllegalArgumentException("channels and capacity must be positive: "
+                    + channels + ", " + capacity);
+        }
+        this.channels = channels;
+        this.capacity = capacity;
+        this.data = new double[channels * capacity];
+    }
+
+    /**
+     * Appends a sample of a single-channel buffer.
+     * @param value the sample value
+     */
+    public void push(double value) {
+        if (channels != 1) {
+            throw new IllegalStateException("buffer has " + channels + " channels");
+        }
+        data[head] = value;
+        advance();
+    }
+
+    /**
+     * Appends one sample holding a value for every channel.
+     * @param sample the values, at least {@link #getChannels()} long
+     */
+    public void push(double[] sample) {
+        for (int c = 0; c < channels; c++) {
+            data[c * capacity + head] = sample[c];
+        }
+        advance();
+    }
+
+    private void advance() {
+        head = head + 1 == capacity ? 0 : head + 1;
+        if (size < capacity) {
+            size++;
+        }
+        totalCount++;
+    }
+
+    /**
+     * Drops every sample; the total count is reset as well.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+        totalCount = 0;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of samples currently held.
+     * @return at most {@link #getCapacity()}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of samples pushed since creation or the last clear,
+     * including those already overwritten.
+     * @return the total sample count
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns a sample value.
+     * @param channel the channel
+     * @param index 0 for the oldest held sample, <code>size() - 1</code> for the newest
+     * @return the value
+     */
+    public double get(int channel, int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return data[channel * capacity + slot(size - index)];
+    }
+
+    /**
+     * Returns the newest value of a channel.
+     * @param channel the channel
+     * @return the value
+     */
+    public double getLast(int channel) {
+        return get(channel, size - 1);
+    }
+
+    /**
+     * Copies the newest <code>length</code> values of a channel, oldest first.
+     * @param channel the channel
+     * @param length the number of values, at most {@link #size()}
+     * @param output the destination
+     * @param offset the first index written in <code>output</code>
+     */
+    public void snapshot(int channel, int length, double[] output, int offset) {
+        if (length > size) {
+            throw new IndexOutOfBoundsException("length " + length + ", size " + size);
+        }
+        int base = channel * capacity;
+        int start = slot(length);
+        int first = Math.min(length, capacity - start);
+        System.arraycopy(data, base + start, output, offset, first);
+        System.arraycopy(data, base, output, offset + first, length - first);
+    }
+
+    /**
+     * Copies the newest <code>length</code> values of a channel, oldest first.
+     * @param channel the channel
+     * @param length the number of values, at most {@link #size()}
+     * @param output the destination
+     */
+    public void snapshot(int channel, int length, double[] output) {
+        snapshot(channel, length, output, 0);
+    }
+
+    /**
+     * Creates a live view of the newest <code>length</code> values of a channel.
+     * The view reads through to the buffer, so it always reflects the latest pushes
+     * and can be kept for the whole session.
+     * @param channel the channel
+     * @param length the window length, at most {@link #getCapacity()}
+     * @return the view
+     */
+    public Window window(int channel, int length) {
+        if (channel < 0 || channel >= channels || length < 1 || length > capacity) {
+            throw new IllegalArgumentException("channel " + channel + ", length " + length);
+        }
+        return new Window(channel, length);
+    }
+
+    /**
+     * Maps "the n-th newest sample" (n >= 1) to its slot in a channel row.
+     */
+    private int slot(int fromNewest) {
+        int s = head - fromNewest;
+        return s < 0 ? s + capacity : s;
+    }
+
+    /**
+     * Zero-copy view of the newest samples of one channel.
+     */
+    public class Window {
+        private final int channel;
+        private final int length;
+
+        private Window(int channel, int length) {
+            this.channel = channel;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Tells whether the buffer holds enough samples to fill the window.
+         * @return true, if <code>size() &gt;= length()</code>
+         */
+        public boolean isFull() {
+            return size >= length;
+        }
+
+        /**
+         * Returns a window value.
+         * @param index 0 for the oldest value of the window
+         * @return the value
+         */
+        public double get(int index) {
+            if (index < 0 || index >= length || length > size) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length + ", size " + size);
+            }
+            return data[channel * capacity + slot(length - index)];
+        }
+
+        /**
+         * Copies the window, oldest first.
+         * @param output the destination, at least {@link #length()} long
+         */
+        public void copyTo(double[] output) {
+            snapshot(channel, length, output, 0);
+        }
+    }
+}
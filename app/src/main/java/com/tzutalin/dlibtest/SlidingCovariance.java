@@ -0,0 +1,204 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Mean vector and covariance matrix of the last <code>n</code> multi-channel
+ * samples, updated in O(k * channels^2) when k samples enter the window.
+ * <p>
+ * The window keeps the co-moment matrix C = sum (x - mean)(x - mean)' rather
+ * than raw second moments, so the update does not cancel large offsets. A
+ * block of k entering samples a and k leaving samples r, with m the old and
+ * m' the new mean and n' the new count, gives
+ * <pre>
+ *   C' = C + sum (a - m)(a - m)' - sum (r - m)(r - m)' - n' (m' - m)(m' - m)'
+ * </pre>
+ * As in {@link SlidingWindowStats}, the moments are recomputed exactly from the
+ * held samples once every <code>n</code> replacements to bound the drift. The
+ * covariance is normalised by the sample count, as {@link FastIca} whitens
+ * with it. Instances are not thread safe and do not allocate after construction.
+ */
+public class SlidingCovariance {
+
+    private final int channels;
+    private final int n;
+    // sample-major ring: the channels of one sample are adjacent
+    private final double[] values;
+    private int head = 0;
+    private int size = 0;
+    private int replacements = 0;
+
+    private final double[] mean;
+    private final double[] comoment;
+    private final double[] oldMean;
+
+    /**
+     * Creates an empty accumulator.
+     * @param channels the number of values per sample
+     * @param n the window length
+     */
+    public SlidingCovariance(int channels, int n) {
+        if (channels < 1 || n < 1) {
+            throw new IllegalArgumentException("channels " + channels + ", window " + n);
+        }
+        this.channels = channels;
+        this.n = n;
+        this.values = new double[n * channels];
+        this.mean = new double[channels];
+        this.comoment = new double[channels * channels];
+        this.oldMean = new double[channels];
+    }
+
+    /**
+     * Adds one sample, dropping the oldest one once the window is full.
+     * @param sample one value per channel
+     */
+    public void push(double[] sample) {
+        push(sample, 1);
+    }
+
+    /**
+     * Adds a block of samples as one rank-k update, dropping as many of the
+     * oldest samples as needed to keep at most <code>n</code>.
+     * @param samples <code>count</code> samples, sample-major: value c of sample s at s * channels + c
+     * @param count the number of samples in the block, at most the window length
+     */
+    public void push(double[] samples, int count) {
+        if (count < 0 || count > n) {
+            throw new IllegalArgumentException("block of " + count + " for a window of " + n);
+        }
+        int m = channels;
+        System.arraycopy(mean, 0, oldMean, 0, m);
+        int removed = Math.max(0, size + count - n);
+        int newSize = size - removed + count;
+
+        // the oldest sample sits at head once the ring has wrapped, else at 0
+        int oldest = size < n ? 0 : head;
+        for (int s = 0; s < removed; s++) {
+            int r = ((oldest + s) % n) * m;
+            for (int i = 0; i < m; i++) {
+                mean[i] -= (values[r + i] - oldMean[i]) / newSize;
+            }
+            addOuter(values, r, -1.0);
+        }
+        for (int s = 0; s < count; s++) {
+            int a = s * m;
+            for (int i = 0; i < m; i++) {
+                mean[i] += (samples[a + i] - oldMean[i]) / newSize;
+            }
+            addOuter(samples, a, 1.0);
+        }
+        // mean now holds the new mean; remove n' (m' - m)(m' - m)'
+        for (int i = 0; i < m; i++) {
+            double di = mean[i] - oldMean[i];
+            for (int j = 0; j < m; j++) {
+                comoment[i * m + j] -= newSize * di * (mean[j] - oldMean[j]);
+            }
+        }
+
+        for (int s = 0; s < count; s++) {
+            System.arraycopy(samples, s * m, values, head * m, m);
+            head = head + 1 == n ? 0 : head + 1;
+        }
+        size = newSize;
+        replacements += removed;
+        if (replacements >= n) {
+            recompute();
+        }
+    }
+
+    /**
+     * Recomputes the moments exactly from the held samples.
+     */
+    public void recompute() {
+        replacements = 0;
+        int m = channels;
+        int first = size < n ? 0 : head;
+        for (int i = 0; i < m; i++) {
+            mean[i] = 0.0;
+        }
+        for (int k = 0; k < m * m; k++) {
+            comoment[k] = 0.0;
+        }
+        if (size == 0) {
+            return;
+        }
+        for (int s = 0; s < size; s++) {
+            int r = ((first + s) % n) * m;
+            for (int i = 0; i < m; i++) {
+                mean[i] += values[r + i];
+            }
+        }
+        for (int i = 0; i < m; i++) {
+            mean[i] /= size;
+            oldMean[i] = mean[i];
+        }
+        for (int s = 0; s < size; s++) {
+            addOuter(values, ((first + s) % n) * m, 1.0);
+        }
+    }
+
+    /**
+     * Drops every sample.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+        replacements = 0;
+        for (int i = 0; i < channels; i++) {
+            mean[i] = 0.0;
+        }
+        for (int k = 0; k < comoment.length; k++) {
+            comoment[k] = 0.0;
+        }
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == n;
+    }
+
+    /**
+     * Copies the mean of the held samples.
+     * @param out receives one value per channel
+     * @return <code>out</code>
+     */
+    public double[] getMean(double[] out) {
+        System.arraycopy(mean, 0, out, 0, channels);
+        return out;
+    }
+
+    /**
+     * Copies the covariance of the held samples, normalised by their count.
+     * @param out receives the channels x channels matrix
+     * @return <code>out</code>
+     */
+    public double[][] getCovariance(double[][] out) {
+        int m = channels;
+        double scale = size == 0 ? 0.0 : 1.0 / size;
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                out[i][j] = comoment[i * m + j] * scale;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Adds sign * (x - m)(x - m)' to the co-moment, with m the mean before the update.
+     */
+    private void addOuter(double[] x, int offset, double sign) {
+        int m = channels;
+        for (int i = 0; i < m; i++) {
+            double di = sign * (x[offset + i] - oldMean[i]);
+            for (int j = 0; j < m; j++) {
+                comoment[i * m + j] += di * (x[offset + j] - oldMean[j]);
+            }
+        }
+    }
+}
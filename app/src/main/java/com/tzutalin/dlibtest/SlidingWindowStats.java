@@ -0,0 +1,196 @@
+package com.tzutalin.dlibtest;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Mean and variance of the last <code>n</code> samples, updated in O(1) per sample.
+ * <p>
+ * Samples enter and leave the window through Welford's update, which avoids
+ * the cancellation of the naive sum / sum-of-squares form. To bound the drift
+ * that add/remove pairs still accumulate, the moments are recomputed exactly
+ * from the held samples once every <code>n</code> replacements, which keeps
+ * the amortised cost per sample constant. The variance is the population
+ * variance, as <code>np.std(window)</code> computes it.
+ * <p>
+ * The window itself lives in a {@link SignalRingBuffer}, either one of its
+ * own or one channel of a buffer the caller already keeps, so the samples are
+ * held only once. A shared buffer must be fed through {@link #push(double[])},
+ * which reads the leaving sample before the buffer overwrites it. Instances
+ * are not thread safe.
+ */
+public class SlidingWindowStats {
+
+    private final SignalRingBuffer buffer;
+    private final int channel;
+    private final int n;
+    private int replacements = 0;
+
+    private double mean = 0.0;
+    private double m2 = 0.0;
+
+    /**
+     * Creates an empty accumulator with a window of its own.
+     * @param n the window length
+     */
+    public SlidingWindowStats(int n) {
+        this(new SignalRingBuffer(1, n), 0);
+    }
+
+    /**
+     * Creates an accumulator over one channel of a buffer; the window length
+     * is the buffer's capacity. Samples the buffer already holds are counted.
+     * @param buffer the buffer holding the window
+     * @param channel the channel to track
+     */
+    public SlidingWindowStats(SignalRingBuffer buffer, int channel) {
+        if (channel < 0 || channel >= buffer.getChannels()) {
+            throw new IllegalArgumentException("channel " + channel + " of " + buffer.getChannels());
+        }
+        this.buffer = buffer;
+        this.channel = channel;
+        this.n = buffer.getCapacity();
+        recompute();
+    }
+
+    /**
+     * Adds a sample to a single-channel window, dropping the oldest one once
+     * the window is full.
+     * @param x the new sample
+     */
+    public void push(double x) {
+        boolean full = buffer.size() == n;
+        double old = full ? buffer.get(channel, 0) : 0.0;
+        buffer.push(x);
+        update(x, old, full);
+    }
+
+    /**
+     * Pushes a sample holding a value for every channel of the buffer and
+     * updates the moments of the tracked channel.
+     * @param sample the values, at least <code>buffer.getChannels()</code> long
+     */
+    public void push(double[] sample) {
+        boolean full = buffer.size() == n;
+        double old = full ? buffer.get(channel, 0) : 0.0;
+        buffer.push(sample);
+        update(sample[channel], old, full);
+    }
+
+    /**
+     * Folds in the sample just pushed.
+     * @param x the new sample
+     * @param old the sample it replaced, if the window was full
+     * @param full whether the window was full before the push
+     */
+    private void update(double x, double old, boolean full) {
+        if (!full) {
+            int size = buffer.size();
+            double delta = x - mean;
+            mean += delta / size;
+            m2 += delta * (x - mean);
+            return;
+        }
+
+        if (++replacements >= n) {
+            recompute();
+            return;
+        }
+        double oldMean = mean;
+        mean += (x - old) / n;
+        m2 += (x - old) * (x - mean + old - oldMean);
+        if (m2 < 0.0) {
+            m2 = 0.0;
+        }
+    }
+
+    /**
+     * Recomputes the moments exactly from the held samples.
+     */
+    public void recompute() {
+        replacements = 0;
+        int size = buffer.size();
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += buffer.get(channel, i);
+        }
+        mean = size == 0 ? 0.0 : sum / size;
+        double sq = 0.0;
+        for (int i = 0; i < size; i++) {
+            double d = buffer.get(channel, i) - mean;
+            sq += d * d;
+        }
+        m2 = sq;
+    }
+
+    /**
+     * Drops every sample, from the shared buffer as well.
+     */
+    public void clear() {
+        buffer.clear();
+        replacements = 0;
+        mean = 0.0;
+        m2 = 0.0;
+    }
+
+    /**
+     * Returns the buffer holding the window.
+     * @return the buffer; not a copy
+     */
+    public SignalRingBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    public boolean isFull() {
+        return buffer.size() == n;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the population variance of the held samples.
+     * @return the variance, 0 for an empty window
+     */
+    public double getVariance() {
+        int size = buffer.size();
+        return size == 0 ? 0.0 : m2 / size;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Writes the z-normalized window, oldest sample first.
+     * A window without variance normalizes to zeros.
+     * @param output the destination, at least {@link #size()} long
+     */
+    public void zNormalize(double[] output) {
+        double std = getStandardDeviation();
+        double inv = std > 0.0 ? 1.0 / std : 0.0;
+        int size = buffer.size();
+        buffer.snapshot(channel, size, output);
+        for (int i = 0; i < size; i++) {
+            output[i] = (output[i] - mean) * inv;
+        }
+    }
+
+    /**
+     * Writes the z-normalized window, oldest sample first, starting at index 0
+     * of <code>output</code>; the buffer's position is left unchanged.
+     * @param output the destination, at least {@link #size()} long
+     */
+    public void zNormalize(DoubleBuffer output) {
+        double std = getStandardDeviation();
+        double inv = std > 0.0 ? 1.0 / std : 0.0;
+        int size = buffer.size();
+        for (int i = 0; i < size; i++) {
+            output.put(i, (buffer.get(channel, i) - mean) * inv);
+        }
+    }
+}
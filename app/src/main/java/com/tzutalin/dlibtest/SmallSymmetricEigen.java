@@ -0,0 +1,197 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Eigenvalue decomposition of 1x1, 2x2 and 3x3 symmetric matrices.
+ * <p>
+ * The RGB use case of {@link FastIca} only ever decomposes 3x3 covariance and
+ * Gram matrices, for which the general {@link EigenValueDecompositionSymm}
+ * (symmetry check, Householder tridiagonalisation, QL iteration and several
+ * array allocations) is overkill. The 2x2 case is solved by one closed-form
+ * Jacobi rotation, the 3x3 case by cyclic Jacobi sweeps unrolled over the three
+ * off-diagonal pairs, which converge quadratically and keep the eigenvectors
+ * orthogonal to working precision. Results are written into caller-provided
+ * arrays; nothing is allocated.
+ * <p>
+ * As in {@link EigenValueDecompositionSymm}, the eigenvalues are sorted in
+ * ascending order and the eigenvectors are the columns of <code>V</code>. The
+ * input is assumed to be symmetric; only its upper triangle is read.
+ */
+public final class SmallSymmetricEigen {
+
+    private static final int MAX_SWEEPS = 32;
+    private static final double EPS = Math.pow(2.0, -52.0);
+
+    private SmallSymmetricEigen() {
+    }
+
+    /**
+     * Tells whether matrices of the given dimension are handled here.
+     * @param n the row and column dimension
+     * @return true, for n from 1 to 3
+     */
+    public static boolean supports(int n) {
+        return n >= 1 && n <= 3;
+    }
+
+    /**
+     * Decomposes a symmetric matrix A = V * diag(d) * V'.
+     * @param a the symmetric n*n input, n from 1 to 3; left untouched
+     * @param d receives the n eigenvalues in ascending order
+     * @param v receives the eigenvectors as columns of an n*n matrix
+     */
+    public static void decompose(double[][] a, double[] d, double[][] v) {
+        switch (a.length) {
+            case 1:
+                d[0] = a[0][0];
+                v[0][0] = 1.0;
+                break;
+            case 2:
+                decompose2(a, d, v);
+                break;
+            case 3:
+                decompose3(a, d, v);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported dimension " + a.length);
+        }
+    }
+
+    private static void decompose2(double[][] a, double[] d, double[][] v) {
+        double a00 = a[0][0];
+        double a11 = a[1][1];
+        double a01 = a[0][1];
+        double c = 1.0;
+        double s = 0.0;
+        if (a01 != 0.0) {
+            double t = rotation(a00, a11, a01);
+            c = 1.0 / Math.sqrt(t * t + 1.0);
+            s = t * c;
+            a00 -= t * a01;
+            a11 += t * a01;
+        }
+        if (a00 <= a11) {
+            d[0] = a00;
+            d[1] = a11;
+            v[0][0] = c;
+            v[1][0] = -s;
+            v[0][1] = s;
+            v[1][1] = c;
+        } else {
+            d[0] = a11;
+            d[1] = a00;
+            v[0][0] = s;
+            v[1][0] = c;
+            v[0][1] = c;
+            v[1][1] = -s;
+        }
+    }
+
+    private static void decompose3(double[][] a, double[] d, double[][] v) {
+        double d0 = a[0][0];
+        double d1 = a[1][1];
+        double d2 = a[2][2];
+        double o01 = a[0][1];
+        double o02 = a[0][2];
+        double o12 = a[1][2];
+
+        double v00 = 1.0, v01 = 0.0, v02 = 0.0;
+        double v10 = 0.0, v11 = 1.0, v12 = 0.0;
+        double v20 = 0.0, v21 = 0.0, v22 = 1.0;
+
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double off = o01 * o01 + o02 * o02 + o12 * o12;
+            double diag = d0 * d0 + d1 * d1 + d2 * d2;
+            if (off <= EPS * EPS * diag || off == 0.0) {
+                break;
+            }
+
+            // pair (0, 1)
+            if (o01 != 0.0) {
+                double t = rotation(d0, d1, o01);
+                double c = 1.0 / Math.sqrt(t * t + 1.0);
+                double s = t * c;
+                d0 -= t * o01;
+                d1 += t * o01;
+                o01 = 0.0;
+                double x = o02;
+                o02 = c * x - s * o12;
+                o12 = s * x + c * o12;
+                x = v00; v00 = c * x - s * v01; v01 = s * x + c * v01;
+                x = v10; v10 = c * x - s * v11; v11 = s * x + c * v11;
+                x = v20; v20 = c * x - s * v21; v21 = s * x + c * v21;
+            }
+
+            // pair (0, 2)
+            if (o02 != 0.0) {
+                double t = rotation(d0, d2, o02);
+                double c = 1.0 / Math.sqrt(t * t + 1.0);
+                double s = t * c;
+                d0 -= t * o02;
+                d2 += t * o02;
+                o02 = 0.0;
+                double x = o01;
+                o01 = c * x - s * o12;
+                o12 = s * x + c * o12;
+                x = v00; v00 = c * x - s * v02; v02 = s * x + c * v02;
+                x = v10; v10 = c * x - s * v12; v12 = s * x + c * v12;
+                x = v20; v20 = c * x - s * v22; v22 = s * x + c * v22;
+            }
+
+            // pair (1, 2)
+            if (o12 != 0.0) {
+                double t = rotation(d1, d2, o12);
+                double c = 1.0 / Math.sqrt(t * t + 1.0);
+                double s = t * c;
+                d1 -= t * o12;
+                d2 += t * o12;
+                o12 = 0.0;
+                double x = o01;
+                o01 = c * x - s * o02;
+                o02 = s * x + c * o02;
+                x = v01; v01 = c * x - s * v02; v02 = s * x + c * v02;
+                x = v11; v11 = c * x - s * v12; v12 = s * x + c * v12;
+                x = v21; v21 = c * x - s * v22; v22 = s * x + c * v22;
+            }
+        }
+
+        d[0] = d0;
+        d[1] = d1;
+        d[2] = d2;
+        v[0][0] = v00; v[0][1] = v01; v[0][2] = v02;
+        v[1][0] = v10; v[1][1] = v11; v[1][2] = v12;
+        v[2][0] = v20; v[2][1] = v21; v[2][2] = v22;
+        sortAscending(d, v, 3);
+    }
+
+    /**
+     * Returns tan of the Jacobi angle that annihilates the off-diagonal element
+     * <code>apq</code>, choosing the smaller rotation for stability.
+     */
+    private static double rotation(double app, double aqq, double apq) {
+        double theta = (aqq - app) / (2.0 * apq);
+        double t = 1.0 / (Math.abs(theta) + Math.sqrt(theta * theta + 1.0));
+        return theta < 0.0 ? -t : t;
+    }
+
+    private static void sortAscending(double[] d, double[][] v, int n) {
+        for (int i = 0; i < n - 1; i++) {
+            int k = i;
+            double p = d[i];
+            for (int j = i + 1; j < n; j++) {
+                if (d[j] < p) {
+                    k = j;
+                    p = d[j];
+                }
+            }
+            if (k != i) {
+                d[k] = d[i];
+                d[i] = p;
+                for (int j = 0; j < n; j++) {
+                    p = v[j][i];
+                    v[j][i] = v[j][k];
+                    v[j][k] = p;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Eigenvalue decomposition of real symmetric matrices of one fixed dimension.
+ * <p>
+ * This is the symmetric half of {@link EigenValueDecompositionSymm}
+ * (Householder tridiagonalisation followed by the implicit QL algorithm,
+ * derived from EISPACK tred2/tql2) without the nonsymmetric Hessenberg path.
+ * The solver is created once per dimension and owns its only workspace, so
+ * {@link #decompose(double[], double[], double[])} allocates nothing and can
+ * be called once per window. Matrices are flat row-major arrays of
+ * <code>n * n</code> values. Instances are not thread safe.
+ * <p>
+ * The eigenvalues are sorted in ascending order and the eigenvectors are the
+ * columns of the result, as in {@link EigenValueDecompositionSymm}.
+ */
+public class SymmetricEigenSolver {
+
+    /** Row and column dimension. */
+    private final int n;
+
+    /** Off-diagonal workspace of the tridiagonal form. */
+    private final double[] e;
+
+    private boolean checkSymmetry = true;
+
+    /**
+     * Creates a solver for n*n matrices.
+     * @param n the row and column dimension
+     */
+    public SymmetricEigenSolver(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("dimension must be positive: " + n);
+        }
+        this.n = n;
+        this.e = new double[n];
+    }
+
+    public int getDimension() {
+        return n;
+    }
+
+    /**
+     * Enables or disables the O(n^2) symmetry check of every input. Callers
+     * that build the input as a Gram or covariance matrix can skip it; only the
+     * lower triangle of an unchecked input is read.
+     * @param checkSymmetry true, to reject nonsymmetric input (the default)
+     */
+    public void setCheckSymmetry(boolean checkSymmetry) {
+        this.checkSymmetry = checkSymmetry;
+    }
+
+    public boolean isCheckSymmetry() {
+        return checkSymmetry;
+    }
+
+    /**
+     * Decomposes a symmetric matrix A = V * diag(d) * V'.
+     * @param in the n*n input, row-major; left untouched unless it is <code>eigenvectors</code>
+     * @param eigenvalues receives the n eigenvalues in ascending order
+     * @param eigenvectors receives V, row-major, the eigenvectors being its columns;
+     *                     may be the same array as <code>in</code>
+     */
+    public void decompose(double[] in, double[] eigenvalues, double[] eigenvectors) {
+        if (checkSymmetry) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < i; j++) {
+                    if (in[i * n + j] != in[j * n + i]) {
+                        throw new IllegalArgumentException(
+                                "matrix is not symmetric at (" + i + ", " + j + ")");
+                    }
+                }
+            }
+        }
+        if (in != eigenvectors) {
+            System.arraycopy(in, 0, eigenvectors, 0, n * n);
+        }
+
+        // Tridiagonalize.
+        tred2(eigenvalues, eigenvectors);
+
+        // Diagonalize.
+        tql2(eigenvalues, eigenvectors);
+    }
+
+    /**
+     * Decomposes a symmetric dense matrix.
+     * @param in the packed n*n input
+     * @param eigenvalues receives the n eigenvalues in ascending order
+     * @param eigenvectors receives the eigenvectors as columns of a packed n*n matrix
+     */
+    public void decompose(DenseMatrix in, double[] eigenvalues, DenseMatrix eigenvectors) {
+        if (in.getRows() != n || in.getCols() != n || in.getStride() != n
+                || eigenvectors.getRows() != n || eigenvectors.getCols() != n
+                || eigenvectors.getStride() != n) {
+            throw new IllegalArgumentException("expected packed " + n + "x" + n + " matrices");
+        }
+        decompose(in.getData(), eigenvalues, eigenvectors.getData());
+    }
+
+    // Symmetric Householder reduction to tridiagonal form.
+
+    private void tred2 (double[] d, double[] v) {
+
+        //  This is derived from the Algol procedures tred2 by
+        //  Bowdler, Martin, Reinsch, and Wilkinson, Handbook for
+        //  Auto. Comp., Vol.ii-Linear Algebra, and the corresponding
+        //  Fortran subroutine in EISPACK.
+
+        for (int j = 0; j < n; j++) {
+            d[j] = v[(n-1) * n + j];
+        }
+
+        // Householder reduction to tridiagonal form.
+
+        for (int i = n-1; i > 0; i--) {
+
+            // Scale to avoid under/overflow.
+
+            double scale = 0.0;
+            double h = 0.0;
+            for (int k = 0; k < i; k++) {
+                scale = scale + Math.abs(d[k]);
+            }
+            if (scale == 0.0) {
+                e[i] = d[i-1];
+                for (int j = 0; j < i; j++) {
+                    d[j] = v[(i-1) * n + j];
+                    v[i * n + j] = 0.0;
+                    v[j * n + i] = 0.0;
+                }
+            } else {
+
+                // Generate Householder vector.
+
+                for (int k = 0; k < i; k++) {
+                    d[k] /= scale;
+                    h += d[k] * d[k];
+                }
+                double f = d[i-1];
+                double g = Math.sqrt(h);
+                if (f > 0) {
+                    g = -g;
+                }
+                e[i] = scale * g;
+                h = h - f * g;
+                d[i-1] = f - g;
+                for (int j = 0; j < i; j++) {
+                    e[j] = 0.0;
+                }
+
+                // Apply similarity transformation to remaining columns.
+
+                for (int j = 0; j < i; j++) {
+                    f = d[j];
+                    v[j * n + i] = f;
+                    g = e[j] + v[j * n + j] * f;
+                    for (int k = j+1; k <= i-1; k++) {
+                        g += v[k * n + j] * d[k];
+                        e[k] += v[k * n + j] * f;
+                    }
+                    e[j] = g;
+                }
+                f = 0.0;
+                for (int j = 0; j < i; j++) {
+                    e[j] /= h;
+                    f += e[j] * d[j];
+                }
+                double hh = f / (h + h);
+                for (int j = 0; j < i; j++) {
+                    e[j] -= hh * d[j];
+                }
+                for (int j = 0; j < i; j++) {
+                    f = d[j];
+                    g = e[j];
+                    for (int k = j; k <= i-1; k++) {
+                        v[k * n + j] -= (f * e[k] + g * d[k]);
+                    }
+                    d[j] = v[(i-1) * n + j];
+                    v[i * n + j] = 0.0;
+                }
+            }
+            d[i] = h;
+        }
+
+        // Accumulate transformations.
+
+        for (int i = 0; i < n-1; i++) {
+            v[(n-1) * n + i] = v[i * n + i];
+            v[i * n + i] = 1.0;
+            double h = d[i+1];
+            if (h != 0.0) {
+                for (int k = 0; k <= i; k++) {
+                    d[k] = v[k * n + (i+1)] / h;
+                }
+                for (int j = 0; j <= i; j++) {
+                    double g = 0.0;
+                    for (int k = 0; k <= i; k++) {
+                        g += v[k * n + (i+1)] * v[k * n + j];
+                    }
+                    for (int k = 0; k <= i; k++) {
+                        v[k * n + j] -= g * d[k];
+                    }
+                }
+            }
+            for (int k = 0; k <= i; k++) {
+                v[k * n + (i+1)] = 0.0;
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            d[j] = v[(n-1) * n + j];
+            v[(n-1) * n + j] = 0.0;
+        }
+        v[(n-1) * n + (n-1)] = 1.0;
+        e[0] = 0.0;
+    }
+
+    // Symmetric tridiagonal QL algorithm.
+
+    private void tql2 (double[] d, double[] v) {
+
+        //  This is derived from the Algol procedures tql2, by
+        //  Bowdler, Martin, Reinsch, and Wilkinson, Handbook for
+        //  Auto. Comp., Vol.ii-Linear Algebra, and the corresponding
+        //  Fortran subroutine in EISPACK.
+
+        for (int i = 1; i < n; i++) {
+            e[i-1] = e[i];
+        }
+        e[n-1] = 0.0;
+
+        double f = 0.0;
+        double tst1 = 0.0;
+        double eps = Math.pow(2.0, -52.0);
+        for (int l = 0; l < n; l++) {
+
+            // Find small subdiagonal element
+
+            tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+            int m = l;
+            while (m < n) {
+                if (Math.abs(e[m]) <= eps*tst1) {
+                    break;
+                }
+                m++;
+            }
+
+            // If m == l, d[l] is an eigenvalue,
+            // otherwise, iterate.
+
+            if (m > l) {
+                int iter = 0;
+                do {
+                    iter = iter + 1;  // (Could check iteration count here.)
+
+                    // Compute implicit shift
+
+                    double g = d[l];
+                    double p = (d[l+1] - g) / (2.0 * e[l]);
+                    double r = Maths.hypot(p,1.0);
+                    if (p < 0) {
+                        r = -r;
+                    }
+                    d[l] = e[l] / (p + r);
+                    d[l+1] = e[l] * (p + r);
+                    double dl1 = d[l+1];
+                    double h = g - d[l];
+                    for (int i = l+2; i < n; i++) {
+                        d[i] -= h;
+                    }
+                    f = f + h;
+
+                    // Implicit QL transformation.
+
+                    p = d[m];
+                    double c = 1.0;
+                    double c2 = c;
+                    double c3 = c;
+                    double el1 = e[l+1];
+                    double s = 0.0;
+                    double s2 = 0.0;
+                    for (int i = m-1; i >= l; i--) {
+                        c3 = c2;
+                        c2 = c;
+                        s2 = s;
+                        g = c * e[i];
+                        h = c * p;
+                        r = Maths.hypot(p,e[i]);
+                        e[i+1] = s * r;
+                        s = e[i] / r;
+                        c = p / r;
+                        p = c * d[i] - s * g;
+                        d[i+1] = h + s * (c * g + s * d[i]);
+
+                        // Accumulate transformation.
+
+                        for (int k = 0; k < n; k++) {
+                            h = v[k * n + (i+1)];
+                            v[k * n + (i+1)] = s * v[k * n + i] + c * h;
+                            v[k * n + i] = c * v[k * n + i] - s * h;
+                        }
+                    }
+                    p = -s * s2 * c3 * el1 * e[l] / dl1;
+                    e[l] = s * p;
+                    d[l] = c * p;
+
+                    // Check for convergence.
+
+                } while (Math.abs(e[l]) > eps*tst1);
+            }
+            d[l] = d[l] + f;
+            e[l] = 0.0;
+        }
+
+        // Sort eigenvalues and corresponding vectors.
+
+        for (int i = 0; i < n-1; i++) {
+            int k = i;
+            double p = d[i];
+            for (int j = i+1; j < n; j++) {
+                if (d[j] < p) {
+                    k = j;
+                    p = d[j];
+                }
+            }
+            if (k != i) {
+                d[k] = d[i];
+                d[i] = p;
+                for (int j = 0; j < n; j++) {
+                    p = v[j * n + i];
+                    v[j * n + i] = v[j * n + k];
+                    v[j * n + k] = p;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Streaming resampler from irregularly timestamped samples onto a uniform grid.
+ * <p>
+ * Camera frames arrive with jittering intervals and some are dropped while the
+ * previous frame is still being processed, while the spectral estimators assume
+ * a fixed sampling rate. Each {@link #push(double[], long)} adds one input sample;
+ * afterwards {@link #poll(double[])} returns the grid samples that became
+ * computable, one per call, until it reports {@link #NO_SAMPLE}. Grid times are
+ * derived from the first timestamp, so they do not drift.
+ * <p>
+ * {@link Interpolation#LINEAR} interpolates between the two newest inputs.
+ * {@link Interpolation#CUBIC} uses a cubic Hermite segment whose tangents are
+ * the central differences of the neighbouring inputs (Catmull-Rom for uniform
+ * input), at the cost of one input sample of extra latency.
+ * <p>
+ * Inputs further apart than the maximum gap, e.g. around a stretch where no
+ * face was found, are not bridged: the grid restarts at the later input, so a
+ * dropout never turns into a run of interpolated samples. Instances are not
+ * thread safe and do not allocate after construction.
+ */
+public class UniformResampler {
+
+    /** Returned by {@link #poll(double[])} when no grid sample is available. */
+    public static final long NO_SAMPLE = Long.MIN_VALUE;
+
+    /** Default longest interval between inputs that is interpolated, in nanoseconds. */
+    public static final long DEFAULT_MAX_GAP_NANOS = 500000000L;
+
+    public enum Interpolation {
+        LINEAR,
+        CUBIC
+    }
+
+    private static final int HISTORY = 4;
+
+    private final int channels;
+    private final double periodNanos;
+    private final Interpolation interpolation;
+
+    // Newest input last; only the last `count` entries are valid.
+    private final long[] times = new long[HISTORY];
+    private final double[] values;
+    private int count = 0;
+
+    private long startNanos;
+    private long gridIndex;
+    private long maxGapNanos = DEFAULT_MAX_GAP_NANOS;
+
+    /**
+     * Creates a resampler.
+     * @param channels the number of values per sample
+     * @param outputRate the grid rate in Hz
+     * @param interpolation the interpolation between inputs
+     */
+    public UniformResampler(int channels, double outputRate, Interpolation interpolation) {
+        if (channels < 1 || !(outputRate > 0.0)) {
+            throw new IllegalArgumentException("channels " + channels + ", rate " + outputRate);
+        }
+        this.channels = channels;
+        this.periodNanos = 1e9 / outputRate;
+        this.interpolation = interpolation;
+        this.values = new double[HISTORY * channels];
+    }
+
+    public double getOutputRate() {
+        return 1e9 / periodNanos;
+    }
+
+    /**
+     * Sets the longest interval between two inputs that is interpolated; a
+     * longer one restarts the grid.
+     * @param maxGapNanos the interval in nanoseconds, at least one grid period
+     */
+    public void setMaxGap(long maxGapNanos) {
+        if (maxGapNanos < periodNanos) {
+            throw new IllegalArgumentException("gap must span at least one grid period: " + maxGapNanos);
+        }
+        this.maxGapNanos = maxGapNanos;
+    }
+
+    public long getMaxGap() {
+        return maxGapNanos;
+    }
+
+    /**
+     * Adds an input sample. Samples whose timestamp does not advance are ignored.
+     * @param sample one value per channel
+     * @param timestampNanos the capture time of the sample
+     * @return true, if the sample starts a new grid: it is the first one, or
+     * follows the previous input by more than the maximum gap. Anything fed
+     * from earlier grid samples should then be reset.
+     */
+    public boolean push(double[] sample, long timestampNanos) {
+        if (count > 0 && timestampNanos - times[HISTORY - 1] > maxGapNanos) {
+            count = 0;
+        }
+        boolean restarted = count == 0;
+        if (restarted) {
+            startNanos = timestampNanos;
+            gridIndex = 0;
+        } else if (timestampNanos <= times[HISTORY - 1]) {
+            return false;
+        }
+
+        System.arraycopy(times, 1, times, 0, HISTORY - 1);
+        System.arraycopy(values, channels, values, 0, (HISTORY - 1) * channels);
+        times[HISTORY - 1] = timestampNanos;
+        System.arraycopy(sample, 0, values, (HISTORY - 1) * channels, channels);
+        if (count < HISTORY) {
+            count++;
+        }
+
+        // Grid points that fell behind the interpolation support were not polled in time.
+        int first = segmentStart();
+        if (first >= 0) {
+            while (gridTime() < times[first]) {
+                gridIndex++;
+            }
+        }
+        return restarted;
+    }
+
+    /**
+     * Computes the next grid sample, if the inputs pushed so far cover it.
+     * @param output receives one value per channel
+     * @return the grid timestamp in nanoseconds, or {@link #NO_SAMPLE}
+     */
+    public long poll(double[] output) {
+        int a = segmentStart();
+        if (a < 0) {
+            return NO_SAMPLE;
+        }
+        int b = a + 1;
+        long t = gridTime();
+        if (t > times[b]) {
+            return NO_SAMPLE;
+        }
+
+        double h = times[b] - times[a];
+        double u = (t - times[a]) / h;
+        if (interpolation == Interpolation.LINEAR) {
+            for (int c = 0; c < channels; c++) {
+                double pa = values[a * channels + c];
+                double pb = values[b * channels + c];
+                output[c] = pa + u * (pb - pa);
+            }
+        } else {
+            // Tangents in units of the segment length; one-sided at the oldest input.
+            int prev = count == HISTORY ? a - 1 : a;
+            double hPrev = times[b] - times[prev];
+            double hNext = times[b + 1] - times[a];
+            double u2 = u * u;
+            double u3 = u2 * u;
+            double h00 = 2 * u3 - 3 * u2 + 1;
+            double h10 = u3 - 2 * u2 + u;
+            double h01 = -2 * u3 + 3 * u2;
+            double h11 = u3 - u2;
+            for (int c = 0; c < channels; c++) {
+                double pa = values[a * channels + c];
+                double pb = values[b * channels + c];
+                double ma = (pb - values[prev * channels + c]) / hPrev * h;
+                double mb = (values[(b + 1) * channels + c] - pa) / hNext * h;
+                output[c] = h00 * pa + h10 * ma + h01 * pb + h11 * mb;
+            }
+        }
+        gridIndex++;
+        return t;
+    }
+
+    /**
+     * Drops all inputs; the next push starts a new grid.
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    private long gridTime() {
+        return startNanos + Math.round(gridIndex * periodNanos);
+    }
+
+    /**
+     * Returns the index of the older input of the segment grid samples are
+     * currently interpolated on, or -1 if there are not enough inputs yet.
+     */
+    private int segmentStart() {
+        if (interpolation == Interpolation.LINEAR) {
+            return count >= 2 ? HISTORY - 2 : -1;
+        }
+        return count >= 3 ? HISTORY - 3 : -1;
+    }
+}
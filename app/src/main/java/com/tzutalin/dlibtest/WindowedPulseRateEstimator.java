@@ -0,0 +1,167 @@
+package com.tzutalin.dlibtest;
+
+/**
+ * Base for estimators that evaluate a fixed-length window of the most recent
+ * samples: keeps the per-channel history and the z-normalization statistics
+ * of the channel average, and provides the spectral helpers the backends share.
+ * The channel average is stored as one extra channel of the history, which
+ * the statistics track in place.
+ */
+public abstract class WindowedPulseRateEstimator implements PulseRateEstimator {
+
+    protected final int channels;
+    protected final int windowSize;
+    protected final double fs;
+    protected final double lowcut;
+    protected final double highcut;
+    protected final int order;
+
+    protected final SignalRingBuffer history;
+    protected final SlidingWindowStats averageStats;
+    private final double[] row;
+    // longest step between grid timestamps that still counts as contiguous
+    private final long maxStepNanos;
+    private long lastTimestamp;
+    private boolean hasTimestamp = false;
+
+    /**
+     * @param channels the number of values per sample
+     * @param windowSize the window length in samples
+     * @param fs the sampling rate in Hz
+     * @param lowcut the lowest pulse frequency in Hz
+     * @param highcut the highest pulse frequency in Hz
+     * @param order the band-pass order
+     */
+    protected WindowedPulseRateEstimator(int channels, int windowSize, double fs,
+                                         double lowcut, double highcut, int order) {
+        this.channels = channels;
+        this.windowSize = windowSize;
+        this.fs = fs;
+        this.lowcut = lowcut;
+        this.highcut = highcut;
+        this.order = order;
+        this.history = new SignalRingBuffer(channels + 1, windowSize);
+        this.averageStats = new SlidingWindowStats(history, channels);
+        this.row = new double[channels + 1];
+        this.maxStepNanos = (long) (1.5e9 / fs);
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channels;
+    }
+
+    @Override
+    public void push(double[] sample, long timestampNanos) {
+        if (hasTimestamp && (timestampNanos <= lastTimestamp
+                || timestampNanos - lastTimestamp > maxStepNanos)) {
+            reset();
+        }
+        lastTimestamp = timestampNanos;
+        hasTimestamp = true;
+
+        double sum = 0.0;
+        for (int c = 0; c < channels; c++) {
+            row[c] = sample[c];
+            sum += sample[c];
+        }
+        row[channels] = sum / channels;
+        averageStats.push(row);
+    }
+
+    @Override
+    public boolean isReady() {
+        return history.size() >= windowSize;
+    }
+
+    @Override
+    public double estimate() {
+        if (!isReady()) {
+            return Double.NaN;
+        }
+        return estimateWindow();
+    }
+
+    /**
+     * Estimates the pulse rate once a full window is available.
+     * @return the pulse rate in beats per minute
+     */
+    protected abstract double estimateWindow();
+
+    @Override
+    public void reset() {
+        averageStats.clear();
+        hasTimestamp = false;
+    }
+
+    /**
+     * Removes the least-squares line from the first <code>n</code> values,
+     * as <code>scipy.signal.detrend</code> does.
+     * @param x the values, modified in place
+     * @param n the number of values
+     */
+    protected static void detrend(double[] x, int n) {
+        double meanT = (n - 1) / 2.0;
+        double meanX = 0.0;
+        for (int i = 0; i < n; i++) {
+            meanX += x[i];
+        }
+        meanX /= n;
+        double cov = 0.0;
+        double var = 0.0;
+        for (int i = 0; i < n; i++) {
+            double t = i - meanT;
+            cov += t * (x[i] - meanX);
+            var += t * t;
+        }
+        double slope = var > 0.0 ? cov / var : 0.0;
+        for (int i = 0; i < n; i++) {
+            x[i] -= meanX + slope * (i - meanT);
+        }
+    }
+
+    /**
+     * Finds the strongest bin of a power spectrum between <code>lowcut</code>
+     * and <code>highcut</code>, looking at the non-negative frequencies only.
+     * @param power the power spectrum of a <code>windowSize</code> point DFT
+     * @return the bin index, or -1 if no bin lies in the band
+     */
+    protected int bandPeak(double[] power) {
+        int peak = -1;
+        double best = -1.0;
+        for (int k = 0; k <= windowSize / 2; k++) {
+            double f = k * fs / windowSize;
+            if (f >= lowcut && f <= highcut && power[k] > best) {
+                best = power[k];
+                peak = k;
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Returns the peak power over the summed power of the other band bins.
+     * @param power the power spectrum of a <code>windowSize</code> point DFT
+     * @param peak the peak bin, as returned by {@link #bandPeak(double[])}
+     * @return the band SNR
+     */
+    protected double bandSnr(double[] power, int peak) {
+        double rest = 0.0;
+        for (int k = 0; k <= windowSize / 2; k++) {
+            double f = k * fs / windowSize;
+            if (f >= lowcut && f <= highcut && k != peak) {
+                rest += power[k];
+            }
+        }
+        return rest > 0.0 ? power[peak] / rest : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Converts a bin index of a <code>windowSize</code> point DFT into beats per minute.
+     * @param bin the bin index
+     * @return the pulse rate
+     */
+    protected double binToBpm(int bin) {
+        return bin < 0 ? Double.NaN : bin * fs / windowSize * 60.0;
+    }
+}
@@ -0,0 +1,141 @@
+package com.tzutalin.dlibtest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pixel arithmetic for YUV 4:2:0 camera frames.
+ * <p>
+ * {@link #toArgb(int, int, int)} uses the same fixed-point BT.601 conversion as
+ * the native <code>ImageUtils.convertYUV420ToARGB8888</code>, so colours
+ * computed in Java match the ones seen in the converted preview bitmap.
+ * The frame converter reads the planes row by row through duplicates, so it
+ * works on the direct buffers of an <code>android.media.Image</code> without
+ * copying whole planes to the heap first, and leaves the buffer positions alone.
+ */
+public final class Yuv420 {
+
+    private static final int MAX_CHANNEL_VALUE = 262143;
+
+    private Yuv420() {
+    }
+
+    /**
+     * Converts one pixel from video-range YUV to opaque ARGB.
+     * @param y the luma sample, 0 - 255
+     * @param u the Cb sample, 0 - 255
+     * @param v the Cr sample, 0 - 255
+     * @return the colour as 0xAARRGGBB
+     */
+    public static int toArgb(int y, int u, int v) {
+        u -= 128;
+        v -= 128;
+        // 1.164 * 1024 = 1192, 1.596 * 1024 = 1634, ... (18 bits per channel)
+        return toArgb(y, 1634 * v, -833 * v - 400 * u, 2066 * u);
+    }
+
+    /**
+     * Converts a YUV 4:2:0 frame to ARGB 8888.
+     * <p>
+     * Each plane row is copied with one bulk get into a small scratch array,
+     * and the chroma terms are computed once per 2x2 block, so a full frame
+     * costs about as much as the native converter's copy-then-convert.
+     * @param y the luma plane
+     * @param u the Cb plane
+     * @param v the Cr plane
+     * @param output the destination, width * height pixels, or a quarter of that
+     * with <code>halfSize</code>
+     * @param width the frame width in pixels
+     * @param height the frame height in pixels
+     * @param yRowStride the distance between luma rows in bytes
+     * @param uvRowStride the distance between chroma rows in bytes
+     * @param uvPixelStride the distance between neighbouring chroma samples in bytes
+     * @param halfSize if true, averages the luma of each 2x2 block into one output pixel
+     */
+    public static void toArgb(ByteBuffer y, ByteBuffer u, ByteBuffer v, int[] output,
+                              int width, int height, int yRowStride, int uvRowStride,
+                              int uvPixelStride, boolean halfSize) {
+        // duplicates keep the callers' positions untouched
+        y = y.duplicate();
+        u = u.duplicate();
+        v = v.duplicate();
+        int uvLength = ((width - 1) >> 1) * uvPixelStride + 1;
+        byte[] uRow = new byte[uvLength];
+        byte[] vRow = new byte[uvLength];
+        if (halfSize) {
+            byte[] yRow0 = new byte[width];
+            byte[] yRow1 = new byte[width];
+            int out = 0;
+            for (int row = 0; row + 1 < height; row += 2) {
+                readRow(y, row * yRowStride, yRow0);
+                readRow(y, (row + 1) * yRowStride, yRow1);
+                readRow(u, (row >> 1) * uvRowStride, uRow);
+                readRow(v, (row >> 1) * uvRowStride, vRow);
+                for (int col = 0; col + 1 < width; col += 2) {
+                    int luma = (yRow0[col] & 0xff) + (yRow0[col + 1] & 0xff)
+                            + (yRow1[col] & 0xff) + (yRow1[col + 1] & 0xff);
+                    int uv = (col >> 1) * uvPixelStride;
+                    output[out++] = toArgb(luma >> 2, uRow[uv] & 0xff, vRow[uv] & 0xff);
+                }
+            }
+            return;
+        }
+
+        byte[] yRow = new byte[width];
+        int out = 0;
+        for (int row = 0; row < height; row++) {
+            readRow(y, row * yRowStride, yRow);
+            if ((row & 1) == 0) {
+                readRow(u, (row >> 1) * uvRowStride, uRow);
+                readRow(v, (row >> 1) * uvRowStride, vRow);
+            }
+            for (int col = 0; col < width; col += 2) {
+                int uv = (col >> 1) * uvPixelStride;
+                int cb = (uRow[uv] & 0xff) - 128;
+                int cr = (vRow[uv] & 0xff) - 128;
+                int rv = 1634 * cr;
+                int guv = -833 * cr - 400 * cb;
+                int bu = 2066 * cb;
+                output[out++] = toArgb(yRow[col] & 0xff, rv, guv, bu);
+                if (col + 1 < width) {
+                    output[out++] = toArgb(yRow[col + 1] & 0xff, rv, guv, bu);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a YUV 4:2:0 frame held in heap arrays to ARGB 8888.
+     * @see #toArgb(ByteBuffer, ByteBuffer, ByteBuffer, int[], int, int, int, int, int, boolean)
+     */
+    public static void toArgb(byte[] y, byte[] u, byte[] v, int[] output,
+                              int width, int height, int yRowStride, int uvRowStride,
+                              int uvPixelStride, boolean halfSize) {
+        toArgb(ByteBuffer.wrap(y), ByteBuffer.wrap(u), ByteBuffer.wrap(v), output,
+                width, height, yRowStride, uvRowStride, uvPixelStride, halfSize);
+    }
+
+    private static void readRow(ByteBuffer plane, int offset, byte[] row) {
+        plane.position(offset);
+        plane.get(row, 0, row.length);
+    }
+
+    /**
+     * Converts one pixel, given the chroma products of {@link #toArgb(int, int, int)}.
+     */
+    private static int toArgb(int y, int rv, int guv, int bu) {
+        y -= 16;
+        if (y < 0) {
+            y = 0;
+        }
+        int luma = 1192 * y;
+        int r = luma + rv;
+        int g = luma + guv;
+        int b = luma + bu;
+
+        r = r > MAX_CHANNEL_VALUE ? MAX_CHANNEL_VALUE : (r < 0 ? 0 : r);
+        g = g > MAX_CHANNEL_VALUE ? MAX_CHANNEL_VALUE : (g < 0 ? 0 : g);
+        b = b > MAX_CHANNEL_VALUE ? MAX_CHANNEL_VALUE : (b < 0 ? 0 : b);
+
+        return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+    }
+}
@@ -0,0 +1,274 @@
+package com.tzutalin.dlibtest;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Averages colour over regions of interest straight from the planes of a
+ * YUV 4:2:0 camera frame.
+ * <p>
+ * Regions are given in the coordinates of the square detector bitmap that
+ * <code>OnGetImageListener</code> draws from the preview: the centre square
+ * of the sensor frame, scaled to <code>viewSize</code> pixels and rotated
+ * clockwise by a multiple of 90 degrees. {@link #mapToSensor(Rect, Rect)}
+ * undoes that transform, and {@link #sample(Rect, double[])} then walks
+ * only the sensor pixels of the region, converting them with
+ * {@link Yuv420#toArgb(int, int, int)}. No full-frame colour conversion is
+ * needed for the signal, and because the sensor is usually larger than the
+ * detector bitmap each region averages over more pixels than before.
+ * <p>
+ * The planes are referenced, not copied, and must stay unchanged (for an
+ * <code>Image</code>, open) while regions are sampled. They are read with
+ * absolute gets, so the direct buffers of an <code>Image</code> can be used
+ * as they are. When the frame has already been converted to ARGB anyway,
+ * {@link #setFrame(int[], int, int)} samples that copy instead, so the
+ * <code>Image</code> can be closed before the regions are known.
+ * Instances are not thread safe.
+ */
+public class YuvRoiSampler {
+
+    /** Index of the mean red value, 0 - 255, in the output of {@link #sample(Rect, double[])}. */
+    public static final int RED = ColorStats.RED;
+    /** Index of the mean green value. */
+    public static final int GREEN = ColorStats.GREEN;
+    /** Index of the mean blue value. */
+    public static final int BLUE = ColorStats.BLUE;
+    /** Index of the mean hue in degrees, as computed by {@link Hue}. */
+    public static final int HUE = ColorStats.HUE;
+    /** Number of values written by {@link #sample(Rect, double[])}. */
+    public static final int CHANNELS = ColorStats.CHANNELS;
+
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int[] argbFrame;
+    private int width;
+    private int height;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+
+    private int viewSize = 1;
+    private int rotation;
+    private double scale = 1.0;
+    private double offsetX;
+    private double offsetY;
+
+    private final Rect sensorRect = new Rect();
+    private final ColorStats stats = new ColorStats();
+    private int[] rowPixels = new int[0];
+
+    /**
+     * Points the sampler at a new frame.
+     * @param y the luma plane, e.g. <code>image.getPlanes()[0].getBuffer()</code>
+     * @param u the Cb plane
+     * @param v the Cr plane
+     * @param width the frame width in pixels
+     * @param height the frame height in pixels
+     * @param yRowStride the distance between luma rows in bytes
+     * @param uvRowStride the distance between chroma rows in bytes
+     * @param uvPixelStride the distance between neighbouring chroma samples in bytes
+     */
+    public void setFrame(ByteBuffer y, ByteBuffer u, ByteBuffer v, int width, int height,
+                         int yRowStride, int uvRowStride, int uvPixelStride) {
+        this.yPlane = y;
+        this.uPlane = u;
+        this.vPlane = v;
+        this.argbFrame = null;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        setSize(width, height);
+    }
+
+    /**
+     * Points the sampler at a new frame held in heap arrays.
+     * @see #setFrame(ByteBuffer, ByteBuffer, ByteBuffer, int, int, int, int, int)
+     */
+    public void setFrame(byte[] y, byte[] u, byte[] v, int width, int height,
+                         int yRowStride, int uvRowStride, int uvPixelStride) {
+        setFrame(ByteBuffer.wrap(y), ByteBuffer.wrap(u), ByteBuffer.wrap(v), width, height,
+                yRowStride, uvRowStride, uvPixelStride);
+    }
+
+    /**
+     * Points the sampler at a frame already converted to ARGB, e.g. by
+     * <code>ImageUtils.convertYUV420ToARGB8888</code>. Means are the same as
+     * from the planes it was converted from.
+     * @param argb the colours as 0xAARRGGBB, <code>width</code> pixels per row
+     * @param width the frame width in pixels
+     * @param height the frame height in pixels
+     */
+    public void setFrame(int[] argb, int width, int height) {
+        this.argbFrame = argb;
+        this.yPlane = null;
+        this.uPlane = null;
+        this.vPlane = null;
+        setSize(width, height);
+    }
+
+    private void setSize(int width, int height) {
+        if (this.width != width || this.height != height) {
+            this.width = width;
+            this.height = height;
+            updateTransform();
+        }
+    }
+
+    /**
+     * Describes how the detector bitmap was drawn from the frame.
+     * @param viewSize the side of the square detector bitmap in pixels
+     * @param rotation the clockwise rotation in degrees: 0, 90, 180 or 270
+     */
+    public void setViewGeometry(int viewSize, int rotation) {
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("rotation must be a multiple of 90 degrees: " + rotation);
+        }
+        this.viewSize = viewSize;
+        this.rotation = rotation;
+        updateTransform();
+    }
+
+    private void updateTransform() {
+        double minDim = Math.min(width, height);
+        scale = minDim > 0 ? viewSize / minDim : 1.0;
+        offsetX = Math.max(0.0, (width - minDim) / 2.0);
+        offsetY = Math.max(0.0, (height - minDim) / 2.0);
+    }
+
+    /**
+     * Maps a rectangle of the detector bitmap to the sensor pixels it was
+     * drawn from, clipped to the frame.
+     * @param view the rectangle in detector bitmap coordinates
+     * @param res the destination for the sensor rectangle
+     * @return res
+     */
+    public Rect mapToSensor(Rect view, Rect res) {
+        double x0;
+        double y0;
+        double x1;
+        double y1;
+        // invert the rotation about the bitmap centre; edges stay axis aligned
+        switch (rotation) {
+            case 90:
+                x0 = view.top;
+                x1 = view.bottom;
+                y0 = viewSize - view.right;
+                y1 = viewSize - view.left;
+                break;
+            case 180:
+                x0 = viewSize - view.right;
+                x1 = viewSize - view.left;
+                y0 = viewSize - view.bottom;
+                y1 = viewSize - view.top;
+                break;
+            case 270:
+                x0 = viewSize - view.bottom;
+                x1 = viewSize - view.top;
+                y0 = view.left;
+                y1 = view.right;
+                break;
+            default:
+                x0 = view.left;
+                x1 = view.right;
+                y0 = view.top;
+                y1 = view.bottom;
+                break;
+        }
+        res.left = clamp((int) Math.round(x0 / scale + offsetX), width);
+        res.right = clamp((int) Math.round(x1 / scale + offsetX), width);
+        res.top = clamp((int) Math.round(y0 / scale + offsetY), height);
+        res.bottom = clamp((int) Math.round(y1 / scale + offsetY), height);
+        return res;
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+
+    /**
+     * Averages the colour of a region of the current frame.
+     * @param view the region in detector bitmap coordinates
+     * @param res the destination for the {@link #CHANNELS} means; left untouched
+     * if the region holds no sensor pixel
+     * @return the number of sensor pixels averaged
+     */
+    public int sample(Rect view, double[] res) {
+        Rect s = mapToSensor(view, sensorRect);
+        stats.clear();
+        if (argbFrame != null) {
+            stats.add(argbFrame, s.top * width + s.left, width, s.width(), s.height());
+        } else {
+            for (int row = s.top; row < s.bottom; row++) {
+                int yRow = row * yRowStride;
+                int uvRow = (row >> 1) * uvRowStride;
+                for (int col = s.left; col < s.right; col++) {
+                    int uv = uvRow + (col >> 1) * uvPixelStride;
+                    stats.add(Yuv420.toArgb(
+                            yPlane.get(yRow + col) & 0xff, uPlane.get(uv) & 0xff, vPlane.get(uv) & 0xff));
+                }
+            }
+        }
+        int count = stats.getCount();
+        if (count > 0) {
+            stats.getMeans(res);
+        }
+        return count;
+    }
+
+    /**
+     * Builds the summed-area tables of a region of the current frame, e.g.
+     * the face bounding box, in one pass over its sensor pixels. Regions
+     * inside it can then be averaged with {@link #sample(IntegralImage, Rect, double[])}.
+     * @param view the region in detector bitmap coordinates
+     * @param res the tables to fill, in sensor coordinates
+     */
+    public void integrate(Rect view, IntegralImage res) {
+        Rect s = mapToSensor(view, sensorRect);
+        int w = s.width();
+        if (argbFrame != null) {
+            res.build(argbFrame, s.top * width + s.left, width, s.left, s.top, w, s.height());
+            return;
+        }
+        if (rowPixels.length < w) {
+            rowPixels = new int[w];
+        }
+        res.begin(s.left, s.top, w, s.height());
+        for (int row = s.top; row < s.bottom; row++) {
+            int yRow = row * yRowStride;
+            int uvRow = (row >> 1) * uvRowStride;
+            for (int col = s.left; col < s.right; col++) {
+                int uv = uvRow + (col >> 1) * uvPixelStride;
+                rowPixels[col - s.left] = Yuv420.toArgb(
+                        yPlane.get(yRow + col) & 0xff, uPlane.get(uv) & 0xff, vPlane.get(uv) & 0xff);
+            }
+            res.appendRow(rowPixels, 0);
+        }
+    }
+
+    /**
+     * Averages the colour of a region from tables built by
+     * {@link #integrate(Rect, IntegralImage)}, in constant time. Gives the
+     * same means as {@link #sample(Rect, double[])} for regions inside the
+     * integrated one; the parts of a region outside it are ignored.
+     * @param integral the tables of the current frame
+     * @param view the region in detector bitmap coordinates
+     * @param res the destination for the {@link #CHANNELS} means; left untouched
+     * if the region holds no integrated pixel
+     * @return the number of sensor pixels averaged
+     */
+    public int sample(IntegralImage integral, Rect view, double[] res) {
+        return integral.getMeans(mapToSensor(view, sensorRect), res);
+    }
+
+    /**
+     * Returns the statistics of the region last passed to
+     * {@link #sample(Rect, double[])}, including the channel variances.
+     * The object is reused by the next call.
+     * @return the statistics of the last sampled region
+     */
+    public ColorStats getStats() {
+        return stats;
+    }
+}
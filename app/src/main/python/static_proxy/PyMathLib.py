@@ -1,12 +1,13 @@
 from __future__ import absolute_import, division, print_function
 
-from java import constructor, method, static_proxy, jint, jarray, jdouble, jboolean, jclass
+from java import constructor, method, static_proxy, jint, jarray, jdouble, jboolean, jbyte, jclass, jvoid
 
 from java.lang import String
 
-from scipy.signal import butter, lfilter
+from scipy.signal import butter, sosfilt
 from sklearn.decomposition import FastICA
 import numpy as np
+from collections import OrderedDict
 
 import scipy
 
@@ -52,11 +53,7 @@ class NpScipy(static_proxy()):
 
     @method(jarray(jarray(jdouble)), [jarray(jarray(jdouble)), jdouble, jdouble, jdouble, jint])
     def butter_bandpass_filter(self, data, lowcut, highcut, fs, order):
-        nyq = 0.5 * fs
-        low = lowcut / nyq
-        high = highcut / nyq
-        b, a = butter(order, [low, high], btype='band')
-        y = lfilter(b, a, data)
+        y = sosfilt(_bandpass_sos(fs, lowcut, highcut, order), data)
         return y
 
 
@@ -74,5 +71,95 @@ class NpScipy(static_proxy()):
         return np.fft.fftfreq(a, b).tolist()
 
 
+    '''Whole PulseRateAlgorithm in one crossing: normalization, ICA, detrend,
+    band-pass, power spectrum and peak search. The window may be raw or
+    already z-normalized. Returns [peak frequency in Hz, peak power,
+    band SNR], where the SNR is the peak power over the power of the other
+    bins of the pass band.'''
+    @method(jarray(jdouble), [jarray(jdouble), jdouble, jdouble, jdouble, jint])
+    def estimate_pulse(self, window, fs, lowcut, highcut, order):
+        window = np.asarray(window, dtype=np.float64)
+        return _estimate_pulse(window, fs, lowcut, highcut, order).tolist()
+
+    '''Same as estimate_pulse, but reads the window from a direct, native-order
+    ByteBuffer of n doubles and writes the three results into another one,
+    so no per-element list conversion happens in either direction.'''
+    @method(jvoid, [jclass("java.nio.ByteBuffer"), jint, jclass("java.nio.ByteBuffer"),
+                    jdouble, jdouble, jdouble, jint])
+    def estimate_pulse_buffer(self, window_buf, n, result_buf, fs, lowcut, highcut, order):
+        window = _wrap_doubles(window_buf, n)
+        result = _estimate_pulse(window, fs, lowcut, highcut, order)
+        out = _wrap_doubles(result_buf, result.shape[0], writable=True)
+        if out is not None:
+            out[:] = result
+        else:
+            _put_doubles(result_buf, result)
+
+
+def _wrap_doubles(buf, n, writable=False):
+    '''Views a direct ByteBuffer as a float64 array without copying when the
+    bridge exposes its memory through the buffer protocol. Otherwise the input
+    is copied once in bulk into a byte[], which numpy then views in place; for
+    output None is returned and the caller writes with _put_doubles.'''
+    try:
+        view = memoryview(buf)
+        if writable and view.readonly:
+            return None
+        return np.frombuffer(view, dtype='=f8', count=n)
+    except TypeError:
+        if writable:
+            return None
+        raw = jarray(jbyte)(n * 8)
+        dup = buf.duplicate()
+        dup.position(0)
+        dup.get(raw)
+        return np.frombuffer(raw, dtype='=f8', count=n)
+
+
+def _put_doubles(buf, values):
+    '''Writes values to the start of a native-order ByteBuffer with a single
+    bulk put through a DoubleBuffer view, instead of one putDouble each.'''
+    dup = buf.duplicate().order(buf.order())
+    dup.position(0)
+    dup.asDoubleBuffer().put(jarray(jdouble)(values.tolist()))
+
+
+# Least recently used designs are dropped first, like ButterworthDesigner on the Java side.
+_SOS_CACHE_SIZE = 16
+_sos_cache = OrderedDict()
+
+
+def _bandpass_sos(fs, lowcut, highcut, order):
+    key = (fs, lowcut, highcut, order)
+    sos = _sos_cache.pop(key, None)
+    if sos is None:
+        nyq = 0.5 * fs
+        sos = butter(order, [lowcut / nyq, highcut / nyq], btype='band', output='sos')
+        if len(_sos_cache) >= _SOS_CACHE_SIZE:
+            _sos_cache.popitem(last=False)
+    _sos_cache[key] = sos
+    return sos
+
+
+def _estimate_pulse(window, fs, lowcut, highcut, order):
+    n = window.shape[0]
+    std = np.std(window)
+    if std == 0:
+        return np.zeros(3)
+    window = (window - np.mean(window)) / std
+    S = FastICA(whiten=False).fit_transform(window.reshape((n, 1)))
+    detrend = scipy.signal.detrend(S[:, 0])
+    y = sosfilt(_bandpass_sos(fs, lowcut, highcut, order), detrend)
+    power = np.abs(np.fft.rfft(y)) ** 2
+    freqs = np.fft.rfftfreq(n, 1.0 / fs)
+    band = np.nonzero((freqs >= lowcut) & (freqs <= highcut))[0]
+    if band.size == 0:
+        return np.zeros(3)
+    peak = band[np.argmax(power[band])]
+    rest = power[band].sum() - power[peak]
+    snr = power[peak] / rest if rest > 0 else float('inf')
+    return np.array([freqs[peak], power[peak], snr])
+
+
 
 